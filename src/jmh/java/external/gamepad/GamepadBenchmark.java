@@ -0,0 +1,53 @@
+package external.gamepad;
+
+import external.webinterface.VirtualGamepad;
+import external.webinterface.VirtualGamepad.Button;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-loop cost of the gamepad edge detection
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GamepadBenchmark {
+
+    private VirtualGamepad gamepad;
+    private GamepadManager manager;
+    private DigitalInputEdgeDetector detector;
+    private boolean input;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        gamepad = new VirtualGamepad();
+        manager = new GamepadManager(gamepad);
+        detector = new DigitalInputEdgeDetector(() -> input);
+    }
+
+    @Benchmark
+    public boolean update() {
+        manager.update();
+        return manager.justTriggered();
+    }
+
+    @Benchmark
+    public boolean updateWithInput() {
+        // one press and release per loop, as if the driver was mashing a button
+        gamepad.setButton(Button.A, true);
+        gamepad.setButton(Button.A, false);
+        manager.update();
+        return manager.justTriggered();
+    }
+
+    @Benchmark
+    public boolean edgeDetector() {
+        input = !input;
+        detector.update();
+        return detector.justPressed();
+    }
+}
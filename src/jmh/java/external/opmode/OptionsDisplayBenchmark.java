@@ -0,0 +1,81 @@
+package external.opmode;
+
+import external.util.OptionEntries;
+import external.webinterface.VirtualGamepad;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One full repaint of the options menu, printed into a null sink
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OptionsDisplayBenchmark {
+
+    static class BenchOptionsOp extends AbstractOptionsOpMode {
+        BenchOptionsOp(String path) {
+            super(path, BenchOptions.class);
+        }
+    }
+
+    enum BenchOptions implements OptionEntries {
+        FIRST_INTEGER(TypeData.integerType(1, 0, 10)),
+        SECOND_INTEGER(TypeData.integerType(5, 0, 100)),
+        FIRST_BOOLEAN(TypeData.booleanType()),
+        SECOND_BOOLEAN(TypeData.booleanType()),
+        AN_ENUM(TypeData.enumType(Side.class)),
+        THIRD_INTEGER(TypeData.integerType(1, -10, 10)),
+        THIRD_BOOLEAN(TypeData.booleanType()),
+        ;
+
+        final TypeData<?> data;
+
+        BenchOptions(TypeData<?> data) {
+            this.data = data;
+        }
+
+        @Override
+        public TypeData<?> getData() {
+            return data;
+        }
+    }
+
+    enum Side {
+        LEFT,
+        RIGHT,
+    }
+
+    private BenchOptionsOp op;
+    private File optionsFile;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        new File("build/tmp/jmh").mkdirs();
+        optionsFile = new File("build/tmp/jmh/options-display");
+        optionsFile.delete();
+
+        op = new BenchOptionsOp(optionsFile.getPath());
+        op.gamepad1 = new VirtualGamepad();
+        op.out = new PrintStream(OutputStream.nullOutputStream());
+        op.init();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        optionsFile.delete();
+    }
+
+    @Benchmark
+    public void display() {
+        op.screen.invalidate(); // otherwise nothing changed since the last call, and nothing would be sent
+        op.display();
+    }
+}
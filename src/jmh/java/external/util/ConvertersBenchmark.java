@@ -0,0 +1,45 @@
+package external.util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converter lookups in {@link BasicConverters}, and string round trips through them
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConvertersBenchmark {
+
+    private final Converters converters = BasicConverters.getInstance();
+    private int intValue = 12345;
+    private double doubleValue = 3.14159;
+    private boolean booleanValue = true;
+
+    @Benchmark
+    public Converter<Integer> lookup() {
+        return converters.getConverter(Integer.class);
+    }
+
+    @Benchmark
+    public Integer integerRoundTrip() {
+        Converter<Integer> c = converters.getConverter(Integer.class);
+        return c.fromString(c.toString(intValue));
+    }
+
+    @Benchmark
+    public Double doubleRoundTrip() {
+        Converter<Double> c = converters.getConverter(Double.class);
+        return c.fromString(c.toString(doubleValue));
+    }
+
+    @Benchmark
+    public Boolean booleanRoundTrip() {
+        Converter<Boolean> c = converters.getConverter(Boolean.class);
+        return c.fromString(c.toString(booleanValue));
+    }
+}
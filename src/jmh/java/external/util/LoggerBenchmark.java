@@ -0,0 +1,57 @@
+package external.util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of one {@link Logger#act()} on the loop thread, for the csv and the binary logger
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoggerBenchmark {
+
+    @Param({"10", "100"})
+    int columns;
+
+    @Param({"csv", "binary"})
+    String format;
+
+    private Logger logger;
+    private double value;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<Logger.Column> list = new ArrayList<>();
+        for (int i = 0; i < columns; i++) {
+            int offset = i;
+            list.add(new Logger.DoubleColumn("column" + i, () -> value + offset));
+        }
+        logger = format.equals("csv")
+                ? new Logger("bench-", ".csv", list)
+                : new BinaryLogger("bench-", ".evlog", list);
+
+        File dir = new File("build/tmp/jmh");
+        dir.mkdirs();
+        logger.start(dir);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        logger.stop();
+        new File("build/tmp/jmh", logger.getFileName()).delete();
+    }
+
+    @Benchmark
+    public void act() {
+        value += 0.25;
+        logger.act();
+    }
+}
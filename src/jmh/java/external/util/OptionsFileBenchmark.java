@@ -0,0 +1,73 @@
+package external.util;
+
+import org.json.simple.parser.ParseException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups, updates and saving of an {@link OptionsFile}, at a realistic size and a large one
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OptionsFileBenchmark {
+
+    @Param({"10", "10000"})
+    int keys;
+
+    private OptionsFile file;
+    private File physicalFile;
+    private String[] tags;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, ParseException {
+        new File("build/tmp/jmh").mkdirs();
+        physicalFile = new File("build/tmp/jmh/options-" + keys);
+        physicalFile.delete();
+        file = new OptionsFile(BasicConverters.getInstance(), physicalFile);
+
+        tags = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            tags[i] = "OPTION_" + i;
+            file.set(tags[i], i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        physicalFile.delete();
+    }
+
+    private String nextTag() {
+        if (++next == tags.length) next = 0;
+        return tags[next];
+    }
+
+    @Benchmark
+    public Integer get() {
+        return file.get(nextTag(), Integer.class);
+    }
+
+    @Benchmark
+    public String getRaw() {
+        return file.getRaw(nextTag());
+    }
+
+    @Benchmark
+    public void set() {
+        file.set(nextTag(), next);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public boolean writeToFile() {
+        return file.writeToFile();
+    }
+}
@@ -0,0 +1,40 @@
+package external.webinterface;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Printing a screen's worth of telemetry through {@link WebPrintStream}, with no client connected
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebPrintStreamBenchmark {
+
+    private static final String LINE = String.format("%-80s", " SOME_OPTION                      < 42 >");
+
+    private WebPrintStream out;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        out = new WebPrintStream(() -> null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        out.close();
+    }
+
+    @Benchmark
+    public void printScreen() {
+        for (int i = 0; i < 11; i++) {
+            out.println(LINE);
+        }
+        out.flush();
+        out.transport.drain();
+    }
+}
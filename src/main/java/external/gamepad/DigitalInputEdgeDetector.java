@@ -9,8 +9,8 @@ import external.util.InputExtractor;
  * a digital input.
  */
 public class DigitalInputEdgeDetector implements InputExtractor<Boolean> {
-    private Boolean currentValue = null;
-    private Boolean previousValue = null;
+    private boolean initialized = false;
+    private boolean currentValue, pressed, released;
     private final InputExtractor<Boolean> extractor;
 
     /**
@@ -26,16 +26,31 @@ public class DigitalInputEdgeDetector implements InputExtractor<Boolean> {
      * @return the current value of the input
      */
     public boolean update() {
+        boolean value = extractor.getValue();
+        return update(value, value && !currentValue, !value && currentValue);
+    }
+
+    /**
+     * update from an already sampled value, along with the edges that happened since the last
+     * update. A press and release that both happened between two updates show up as both
+     * {@link #justPressed()} and {@link #justReleased()}, even though the value did not change.
+     *
+     * @param value    the current value of the input
+     * @param pressed  whether the input went from false to true since the last update
+     * @param released whether the input went from true to false since the last update
+     * @return the current value of the input
+     */
+    public boolean update(boolean value, boolean pressed, boolean released) {
         // if this is the first call to update()
-        if (currentValue == null) {
-            // set currentValue and previousValue to the reading so no edges are
-            // triggered
-            currentValue = extractor.getValue();
-            previousValue = currentValue;
-        } else {
-            previousValue = currentValue;
-            currentValue = extractor.getValue();
+        if (!initialized) {
+            // don't trigger any edges
+            initialized = true;
+            pressed = false;
+            released = false;
         }
+        currentValue = value;
+        this.pressed = pressed;
+        this.released = released;
         return currentValue;
     }
 
@@ -44,7 +59,7 @@ public class DigitalInputEdgeDetector implements InputExtractor<Boolean> {
      */
     @Override
     public Boolean getValue() {
-        return currentValue;
+        return initialized ? currentValue : null;
     }
 
     /**
@@ -58,13 +73,13 @@ public class DigitalInputEdgeDetector implements InputExtractor<Boolean> {
      * @return if the input just turned from false to true
      */
     public boolean justPressed() {
-        return currentValue && !previousValue;
+        return pressed;
     }
 
     /**
      * @return if the input just turned from true to false
      */
     public boolean justReleased() {
-        return !currentValue && previousValue;
+        return released;
     }
 }
\ No newline at end of file
@@ -1,6 +1,9 @@
 package external.gamepad;
 
+import external.util.Histogram;
+import external.webinterface.GamepadEventQueue;
 import external.webinterface.VirtualGamepad;
+import external.webinterface.VirtualGamepad.Button;
 
 /**
  * This file was made by the electronVolts, FTC team 7393
@@ -9,6 +12,10 @@ import external.webinterface.VirtualGamepad;
  * This class wraps a gamepad and adds:
  * Edge detection to the digital inputs (buttons and dpad) {@see DigitalInputEdgeDetector}
  * Scaling to the analog inputs (joysticks and triggers) {@see AnalogInputScaler}
+ * <p>
+ * Every {@link #update()} drains the gamepad's event queue and updates all the buttons from one
+ * consistent snapshot, so every button sees the same moment in time and no tap is missed.
+ * </p>
  */
 public class GamepadManager {
     //this stores all the wrapped digital inputs
@@ -18,6 +25,19 @@ public class GamepadManager {
 
     public final DigitalInputEdgeDetector[] digitalInputEdgeDetectors;
 
+    private final VirtualGamepad gamepad;
+    // the detector for each button, indexed by Button ordinal
+    private final DigitalInputEdgeDetector[] byButton;
+    private final GamepadEventQueue.Consumer onEvent = this::onEvent;
+    private final Histogram inputLatency = new Histogram("input latency");
+
+    // the button state as rebuilt from the events, and the edges seen during this update
+    private int state, pressed, released;
+    private long updateTime, droppedEvents;
+    // how many updates ran before this one, and who to tell about the events this one takes
+    private long updates;
+    private VirtualGamepad.UpdateListener listener;
+
     //this stores all the wrapped analog inputs
 //    public final AnalogInputScaler left_stick_x, left_stick_y, right_stick_x, right_stick_y,
 //            left_trigger, right_trigger;
@@ -34,20 +54,20 @@ public class GamepadManager {
 //    public GamepadManager(Gamepad gamepad, Function scalingFunction, InitButton initButton) {
 
         //create all the DigitalInputEdgeDetector objects
-        a = new DigitalInputEdgeDetector(() -> gamepad.a);
-        b = new DigitalInputEdgeDetector(() -> gamepad.b);
-        x = new DigitalInputEdgeDetector(() -> gamepad.x);
-        y = new DigitalInputEdgeDetector(() -> gamepad.y);
-        left_bumper = new DigitalInputEdgeDetector(() -> gamepad.left_bumper);
-        right_bumper = new DigitalInputEdgeDetector(() -> gamepad.right_bumper);
-        dpad_up = new DigitalInputEdgeDetector(() -> gamepad.dpad_up);
-        dpad_down = new DigitalInputEdgeDetector(() -> gamepad.dpad_down);
-        dpad_left = new DigitalInputEdgeDetector(() -> gamepad.dpad_left);
-        dpad_right = new DigitalInputEdgeDetector(() -> gamepad.dpad_right);
-        left_stick_button = new DigitalInputEdgeDetector(() -> gamepad.left_stick_button);
-        right_stick_button = new DigitalInputEdgeDetector(() -> gamepad.right_stick_button);
-        back = new DigitalInputEdgeDetector(() -> gamepad.back);
-        start = new DigitalInputEdgeDetector(() -> gamepad.start);
+        a = new DigitalInputEdgeDetector(() -> gamepad.isPressed(Button.A));
+        b = new DigitalInputEdgeDetector(() -> gamepad.isPressed(Button.B));
+        x = new DigitalInputEdgeDetector(() -> gamepad.isPressed(Button.X));
+        y = new DigitalInputEdgeDetector(() -> gamepad.isPressed(Button.Y));
+        left_bumper = new DigitalInputEdgeDetector(() -> gamepad.isPressed(Button.LEFT_BUMPER));
+        right_bumper = new DigitalInputEdgeDetector(() -> gamepad.isPressed(Button.RIGHT_BUMPER));
+        dpad_up = new DigitalInputEdgeDetector(() -> gamepad.isPressed(Button.DPAD_UP));
+        dpad_down = new DigitalInputEdgeDetector(() -> gamepad.isPressed(Button.DPAD_DOWN));
+        dpad_left = new DigitalInputEdgeDetector(() -> gamepad.isPressed(Button.DPAD_LEFT));
+        dpad_right = new DigitalInputEdgeDetector(() -> gamepad.isPressed(Button.DPAD_RIGHT));
+        left_stick_button = new DigitalInputEdgeDetector(() -> gamepad.isPressed(Button.LEFT_STICK_BUTTON));
+        right_stick_button = new DigitalInputEdgeDetector(() -> gamepad.isPressed(Button.RIGHT_STICK_BUTTON));
+        back = new DigitalInputEdgeDetector(() -> gamepad.isPressed(Button.BACK));
+        start = new DigitalInputEdgeDetector(() -> gamepad.isPressed(Button.START));
 
         //create all the AnalogInputScaler objects
 //        left_stick_x = new AnalogInputScaler(() -> gamepad.left_stick_x, scalingFunction);
@@ -62,6 +82,31 @@ public class GamepadManager {
                 dpad_up, dpad_down, dpad_left, dpad_right,
                 left_stick_button, right_stick_button, back, start,
         };
+
+        byButton = new DigitalInputEdgeDetector[Button.values().length];
+        byButton[Button.A.ordinal()] = a;
+        byButton[Button.B.ordinal()] = b;
+        byButton[Button.X.ordinal()] = x;
+        byButton[Button.Y.ordinal()] = y;
+        byButton[Button.LEFT_BUMPER.ordinal()] = left_bumper;
+        byButton[Button.RIGHT_BUMPER.ordinal()] = right_bumper;
+        byButton[Button.DPAD_UP.ordinal()] = dpad_up;
+        byButton[Button.DPAD_DOWN.ordinal()] = dpad_down;
+        byButton[Button.DPAD_LEFT.ordinal()] = dpad_left;
+        byButton[Button.DPAD_RIGHT.ordinal()] = dpad_right;
+        byButton[Button.LEFT_STICK_BUTTON.ordinal()] = left_stick_button;
+        byButton[Button.RIGHT_STICK_BUTTON.ordinal()] = right_stick_button;
+        byButton[Button.BACK.ordinal()] = back;
+        byButton[Button.START.ordinal()] = start;
+
+        this.gamepad = gamepad;
+        // anything that happened before this manager existed is not an edge. Holding the lock
+        // setButton() holds keeps an event from landing between the clear and reading the state
+        synchronized (gamepad) {
+            gamepad.getEvents().clear();
+            droppedEvents = gamepad.getEvents().getDropped();
+            state = gamepad.getButtons();
+        }
     }
 
     public boolean justTriggered() {
@@ -76,27 +121,29 @@ public class GamepadManager {
     public void update() {
         //update all the values
 
-        a.update();
-        b.update();
-        x.update();
-        y.update();
-
-        left_bumper.update();
-        right_bumper.update();
+        updateTime = gamepad.getClock().nanoTime();
+        pressed = 0;
+        released = 0;
 
-//        left_trigger.update();
-//        right_trigger.update();
+        listener = gamepad.getListener();
+        GamepadEventQueue events = gamepad.getEvents();
+        events.drain(onEvent);
 
-        dpad_up.update();
-        dpad_down.update();
-        dpad_left.update();
-        dpad_right.update();
+        // if events were lost, the rebuilt state can't be trusted, so take the published one
+        long dropped = events.getDropped();
+        if (dropped != droppedEvents) {
+            droppedEvents = dropped;
+            state = gamepad.getButtons();
+        }
 
-        left_stick_button.update();
-        right_stick_button.update();
+        for (int i = 0; i < byButton.length; i++) {
+            int mask = 1 << i;
+            byButton[i].update((state & mask) != 0, (pressed & mask) != 0, (released & mask) != 0);
+        }
+        updates++;
 
-        back.update();
-        start.update();
+//        left_trigger.update();
+//        right_trigger.update();
 
 //        left_stick_x.update();
 //        left_stick_y.update();
@@ -104,6 +151,24 @@ public class GamepadManager {
 //        right_stick_x.update();
 //        right_stick_y.update();
 
+    }
+
+    private void onEvent(long nanos, Button button, boolean down) {
+        if (down) {
+            state |= button.mask;
+            pressed |= button.mask;
+        } else {
+            state &= ~button.mask;
+            released |= button.mask;
+        }
+        inputLatency.record(updateTime - nanos);
+        if (listener != null) listener.onEvent(updates, button, down);
+    }
 
+    /**
+     * @return the time from each button event to the update() that saw it, in nanoseconds
+     */
+    public Histogram getInputLatency() {
+        return inputLatency;
     }
 }
@@ -0,0 +1,213 @@
+package external.headless;
+
+import external.opmode.HardwarelessAbstractOp;
+import external.util.VirtualClock;
+import external.webinterface.VirtualGamepad;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Runs opmodes without the web interface, against a {@link SessionRecording}.
+ * <p>
+ * The opmode gets its own gamepad and output, and a virtual clock that jumps one loop period per
+ * loop, so a session replays as fast as the CPU allows. Recorded gamepad events are pressed right
+ * before the loop that took them live, and recorded refreshes redraw the screen right before the
+ * same loop they did live. Once the replay is done, the output is compared to the recorded output.
+ * </p>
+ * Every replay gets a brand new opmode from the factory, so the factory must not hand out shared
+ * state. E.g. give every opmode its own options file, filled with {@link SessionRecording#getOptions()}.
+ */
+public class HeadlessRunner {
+
+    /**
+     * The outcome of one replay
+     */
+    public static class Result {
+        private final SessionRecording recording;
+        private final String output;
+        private final long loops;
+        private final long elapsedNanos;
+
+        Result(SessionRecording recording, String output, long loops, long elapsedNanos) {
+            this.recording = recording;
+            this.output = output;
+            this.loops = loops;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public SessionRecording getRecording() {
+            return recording;
+        }
+
+        /**
+         * @return everything the opmode printed during the replay
+         */
+        public String getOutput() {
+            return output;
+        }
+
+        public long getLoops() {
+            return loops;
+        }
+
+        /**
+         * @return how long the replay took in real time
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return whether the replay printed exactly what was recorded
+         */
+        public boolean matches() {
+            return output.equals(recording.getOutput());
+        }
+
+        /**
+         * @return the index of the first line that differs between the recording and the replay, or -1 if they match
+         */
+        public int getFirstDifferentLine() {
+            if (matches()) return -1;
+            String[] expected = recording.getOutput().split("\n", -1);
+            String[] actual = output.split("\n", -1);
+            int line = 0;
+            while (line < expected.length && line < actual.length && expected[line].equals(actual[line])) {
+                line++;
+            }
+            return line;
+        }
+
+        @Override
+        public String toString() {
+            String timing = String.format("%d loops in %.1fms", loops, elapsedNanos / 1e6);
+            int line = getFirstDifferentLine();
+            if (line < 0) {
+                return "matched, " + timing;
+            }
+            String[] expected = recording.getOutput().split("\n", -1);
+            String[] actual = output.split("\n", -1);
+            return String.format("differs at line %d, %s%n  expected: %s%n  actual:   %s",
+                    line + 1, timing,
+                    line < expected.length ? expected[line] : "<end of output>",
+                    line < actual.length ? actual[line] : "<end of output>");
+        }
+    }
+
+    private final Function<SessionRecording, ? extends HardwarelessAbstractOp> factory;
+    private final long tailNanos;
+
+    /**
+     * @param factory   makes a fresh opmode for every replay, set up the way the recording started
+     * @param tailNanos how long to keep looping after the last recorded event
+     */
+    public HeadlessRunner(Function<SessionRecording, ? extends HardwarelessAbstractOp> factory, long tailNanos) {
+        this.factory = factory;
+        this.tailNanos = tailNanos;
+    }
+
+    /**
+     * Keeps looping for one second after the last recorded event
+     *
+     * @param factory makes a fresh opmode for every replay, set up the way the recording started
+     */
+    public HeadlessRunner(Function<SessionRecording, ? extends HardwarelessAbstractOp> factory) {
+        this(factory, 1_000_000_000L);
+    }
+
+    /**
+     * Replay a session on the current thread
+     *
+     * @param recording the session to replay
+     * @return the outcome
+     */
+    public Result replay(SessionRecording recording) {
+        long startTime = System.nanoTime();
+
+        VirtualClock clock = new VirtualClock();
+        VirtualGamepad gamepad = new VirtualGamepad(clock);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, false);
+
+        HardwarelessAbstractOp opMode = factory.apply(recording);
+        opMode.gamepad1 = gamepad;
+        opMode.out = out;
+
+        long period = recording.getLoopPeriodNanos();
+        long end = recording.getLastLoop() + tailNanos / period;
+        int next = 0;
+        long loops = 0;
+
+        opMode.init();
+        opMode.start();
+        for (long loop = 0; loop <= end; loop++) {
+            while (next < recording.getEventCount() && recording.getLoop(next) <= loop) {
+                if (recording.isRefresh(next)) {
+                    opMode.refresh();
+                } else {
+                    gamepad.setButton(recording.getButton(next), recording.isDown(next));
+                }
+                next++;
+            }
+            opMode.loop();
+            loops++;
+            clock.advance(period);
+        }
+        opMode.stop();
+
+        out.flush();
+        String output = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        return new Result(recording, output, loops, System.nanoTime() - startTime);
+    }
+
+    /**
+     * Replay many sessions in parallel, each against its own opmode
+     *
+     * @param recordings the sessions to replay
+     * @param threads    how many replays to run at once
+     * @return the outcome of every replay, in the same order as the recordings
+     */
+    public List<Result> replayAll(List<SessionRecording> recordings, int threads) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "replay");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (SessionRecording recording : recordings) {
+                futures.add(executor.submit(() -> replay(recording)));
+            }
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new RuntimeException("A replay failed", e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Replay many sessions in parallel, one per available processor
+     *
+     * @param recordings the sessions to replay
+     * @return the outcome of every replay, in the same order as the recordings
+     */
+    public List<Result> replayAll(List<SessionRecording> recordings) throws InterruptedException {
+        return replayAll(recordings, Runtime.getRuntime().availableProcessors());
+    }
+}
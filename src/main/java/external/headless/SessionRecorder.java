@@ -0,0 +1,121 @@
+package external.headless;
+
+import external.webinterface.VirtualGamepad;
+import external.webinterface.VirtualGamepad.Button;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records a live session so it can be replayed later with {@link HeadlessRunner}.
+ * <p>
+ * Create it right before the opmode is initialized, give the opmode {@link #getOut()} instead of
+ * the real output, and call {@link #finish()} once the opmode has stopped.
+ * </p>
+ * Events are recorded when the opmode's GamepadManager takes them, together with the loop that
+ * took them, so they only show up for opmodes that use one (e.g. every AbstractTeleOp). Redraws
+ * of the whole screen are recorded through {@link #refreshed(long)}, e.g. from
+ * {@link external.webinterface.Session#setRefreshListener}.
+ */
+public class SessionRecorder {
+
+    private final VirtualGamepad gamepad;
+    private final long loopPeriodNanos;
+    private final Map<String, String> options;
+
+    private final List<Long> loops = new ArrayList<>();
+    private final List<Button> buttons = new ArrayList<>();
+    private final List<Boolean> down = new ArrayList<>();
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final PrintStream out;
+
+    /**
+     * Start recording
+     *
+     * @param gamepad         the gamepad whose events to record
+     * @param out             where the opmode's output should still go
+     * @param loopPeriodNanos the period the opmode loop runs at
+     * @param options         the contents of the opmode's options file as it starts, so a replay can start from them too
+     */
+    public SessionRecorder(VirtualGamepad gamepad, PrintStream out, long loopPeriodNanos, Map<String, String> options) {
+        this.gamepad = gamepad;
+        this.loopPeriodNanos = loopPeriodNanos;
+        this.options = options;
+
+        this.out = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                synchronized (output) {
+                    output.write(b);
+                }
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                synchronized (output) {
+                    output.write(b, off, len);
+                }
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void flush() {
+                out.flush();
+            }
+        }, false);
+
+        gamepad.setListener(this::onEvent);
+    }
+
+    private synchronized void onEvent(long loop, Button button, boolean isDown) {
+        loops.add(loop);
+        buttons.add(button);
+        down.add(isDown);
+    }
+
+    /**
+     * Record that the opmode's {@link external.opmode.HardwarelessAbstractOp#refresh()} ran
+     *
+     * @param loop the loop it ran right before, counting from 0 at the first loop after start
+     */
+    public void refreshed(long loop) {
+        onEvent(loop, null, false);
+    }
+
+    /**
+     * @return the stream to give the opmode, it prints to the original output as well as the recording
+     */
+    public PrintStream getOut() {
+        return out;
+    }
+
+    /**
+     * Stop recording
+     *
+     * @return everything that was recorded
+     */
+    public synchronized SessionRecording finish() {
+        gamepad.setListener(null);
+        out.flush();
+
+        int count = loops.size();
+        long[] l = new long[count];
+        boolean[] d = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            l[i] = loops.get(i);
+            d[i] = down.get(i);
+        }
+        String text;
+        synchronized (output) {
+            text = new String(output.toByteArray(), StandardCharsets.UTF_8);
+        }
+        return new SessionRecording(loopPeriodNanos, options, l, buttons.toArray(new Button[0]), d, text);
+    }
+}
@@ -0,0 +1,233 @@
+package external.headless;
+
+import external.webinterface.VirtualGamepad.Button;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A recorded driver session: the options the opmode started with, every gamepad event with the
+ * loop that took it, every time the opmode redrew its whole screen for a client, and everything
+ * the opmode printed.
+ * <p>
+ * Events are keyed by loop instead of by time, so a replay hands every event to the same loop
+ * that got it live, however the live loop's timing happened to line up with the keyboard.
+ * </p>
+ * File format (gzipped, big-endian): the int {@link #MAGIC}, a short {@link #VERSION}, the loop
+ * period in nanoseconds as a long, an int option count, then per option its name and value as
+ * modified UTF-8 (see {@link DataOutputStream#writeUTF}). Then an int event count, and per event
+ * the loops since the previous event as an int and a byte holding {@code button ordinal << 1 | down},
+ * or {@link #REFRESH} for a redraw.
+ * Last comes an int length and the recorded output as UTF-8.
+ *
+ * @see SessionRecorder
+ * @see HeadlessRunner
+ */
+public class SessionRecording {
+
+    static final int MAGIC = 0x45565243; // "EVRC"
+    static final short VERSION = 2;
+    // the event byte of a refresh, past the codes of every button
+    static final int REFRESH = 0xFF;
+
+    private static final Button[] BUTTONS = Button.values();
+
+    private final long loopPeriodNanos;
+    private final Map<String, String> options;
+    private final long[] loops;
+    private final Button[] buttons;
+    private final boolean[] down;
+    private final String output;
+
+    /**
+     * @param loopPeriodNanos the period the opmode loop ran at while recording
+     * @param options         the contents of the opmode's options file when it started, empty if it has none
+     * @param loops           the loop that took each event, counting from 0 at the first loop after start
+     * @param buttons         the button each event changed, null for a refresh
+     * @param down            whether each event pressed (true) or released (false) its button, false for a refresh
+     * @param output          everything the opmode printed
+     */
+    public SessionRecording(long loopPeriodNanos, Map<String, String> options, long[] loops,
+                            Button[] buttons, boolean[] down, String output) {
+        if (loops.length != buttons.length || loops.length != down.length) {
+            throw new IllegalArgumentException("Every event needs a loop, a button and a direction");
+        }
+        this.loopPeriodNanos = loopPeriodNanos;
+        this.options = Collections.unmodifiableMap(new TreeMap<>(options));
+        this.loops = loops;
+        this.buttons = buttons;
+        this.down = down;
+        this.output = output;
+    }
+
+    public long getLoopPeriodNanos() {
+        return loopPeriodNanos;
+    }
+
+    /**
+     * @return the contents of the opmode's options file when it started, a replay should start from the same file
+     */
+    public Map<String, String> getOptions() {
+        return options;
+    }
+
+    public int getEventCount() {
+        return loops.length;
+    }
+
+    /**
+     * @return the loop that took the event, counting from 0 at the first loop after start
+     */
+    public long getLoop(int event) {
+        return loops[event];
+    }
+
+    /**
+     * @return the button the event changed, or null if it is a refresh
+     */
+    public Button getButton(int event) {
+        return buttons[event];
+    }
+
+    /**
+     * @return whether the event is a refresh instead of a button change: the opmode's
+     * {@link external.opmode.HardwarelessAbstractOp#refresh()} ran right before the event's loop
+     */
+    public boolean isRefresh(int event) {
+        return buttons[event] == null;
+    }
+
+    public boolean isDown(int event) {
+        return down[event];
+    }
+
+    /**
+     * @return the loop of the last event, or 0 if there are none
+     */
+    public long getLastLoop() {
+        return loops.length == 0 ? 0 : loops[loops.length - 1];
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+    /**
+     * @return a copy of this recording with different expected output
+     */
+    public SessionRecording withOutput(String output) {
+        return new SessionRecording(loopPeriodNanos, options, loops, buttons, down, output);
+    }
+
+    /**
+     * Save the recording
+     *
+     * @param file the file to write to, it will be overwritten
+     */
+    public void write(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(file))))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(loopPeriodNanos);
+            out.writeInt(options.size());
+            for (Map.Entry<String, String> option : options.entrySet()) {
+                out.writeUTF(option.getKey());
+                out.writeUTF(option.getValue());
+            }
+            out.writeInt(loops.length);
+            long previous = 0;
+            for (int i = 0; i < loops.length; i++) {
+                out.writeInt(Math.toIntExact(loops[i] - previous));
+                out.writeByte(isRefresh(i) ? REFRESH : buttons[i].ordinal() << 1 | (down[i] ? 1 : 0));
+                previous = loops[i];
+            }
+            byte[] text = output.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(text.length);
+            out.write(text);
+        }
+    }
+
+    /**
+     * Load a recording saved with {@link #write(File)}
+     *
+     * @param file the file to read from
+     * @return the recording
+     * @throws IOException if the file could not be read or is not a recording
+     */
+    public static SessionRecording read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a session recording");
+            }
+            short version = in.readShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported session recording version " + version);
+            }
+            long period = in.readLong();
+            Map<String, String> options = new TreeMap<>();
+            int optionCount = in.readInt();
+            for (int i = 0; i < optionCount; i++) {
+                options.put(in.readUTF(), in.readUTF());
+            }
+            int count = in.readInt();
+            long[] loops = new long[count];
+            Button[] buttons = new Button[count];
+            boolean[] down = new boolean[count];
+            long loop = 0;
+            for (int i = 0; i < count; i++) {
+                loop += in.readInt();
+                int code = in.readUnsignedByte();
+                loops[i] = loop;
+                if (code == REFRESH) {
+                    continue;
+                }
+                if (code >>> 1 >= BUTTONS.length) {
+                    throw new IOException("Unknown event " + code + " in " + file);
+                }
+                buttons[i] = BUTTONS[code >>> 1];
+                down[i] = (code & 1) != 0;
+            }
+            byte[] text = new byte[in.readInt()];
+            in.readFully(text);
+            return new SessionRecording(period, options, loops, buttons, down, new String(text, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SessionRecording(%d options, %d events over %d loops, %d chars of output)",
+                options.size(), loops.length, getLastLoop(), output.length());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof SessionRecording)) return false;
+        SessionRecording other = (SessionRecording) o;
+        return loopPeriodNanos == other.loopPeriodNanos
+                && options.equals(other.options)
+                && Arrays.equals(loops, other.loops)
+                && Arrays.equals(buttons, other.buttons)
+                && Arrays.equals(down, other.down)
+                && output.equals(other.output);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(loops) * 31 + output.hashCode();
+    }
+}
@@ -1,11 +1,14 @@
 package external.opmode;
 
-import external.webinterface.WebInterface;
 import external.util.*;
+import external.webinterface.ScreenBuffer;
 import org.json.simple.parser.ParseException;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
 
 /**
  * A TeleOp for making persistent K-V settings.
@@ -38,10 +41,19 @@ public abstract class AbstractOptionsOpMode extends AbstractTeleOp {
     private final int START_OFFSET = (LINES - 1) / 2;
     private final int leftSpacing;
 
+    /**
+     * What is on the output terminal, so that only changed lines are sent
+     */
+    protected final ScreenBuffer screen = new ScreenBuffer(LINES, LINE_WIDTH + 1);
+
     private OptionsFile file;
 
     private final Enum<?>[] optionsList;
-//    private final Map<Enum<?>, Object> optionsMap;
+    /**
+     * The typed value of every option, indexed by ordinal. Filled in lazily by {@link #load(Enum)},
+     * so only the options that are actually used get converted from their string form.
+     */
+    private final Object[] cache;
 
     /**
      * The index of the option which is currently selected
@@ -90,6 +102,18 @@ public abstract class AbstractOptionsOpMode extends AbstractTeleOp {
      * @return The object from the internal map
      */
     private Object load(Enum<?> option) {
+        Object value = cache[option.ordinal()];
+        if (value == null) {
+            value = loadFromFile(option);
+            cache[option.ordinal()] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Convert the option's stored string into the type specified in the OptionEntry's TypeData
+     */
+    private Object loadFromFile(Enum<?> option) {
         Converter<?> c = asTypeData(option).converter;
         if (c != null) {
             Object out = c.fromString(file.getRaw(option.name()));
@@ -107,9 +131,12 @@ public abstract class AbstractOptionsOpMode extends AbstractTeleOp {
      * @param value  The value to store
      */
     private void store(Enum<?> option, Object value) {
+        cache[option.ordinal()] = value;
+
+        // the file only holds strings, so this is the one place a value is converted to one
         Converter c = asTypeData(option).converter;
         if (c != null) {
-            file.getValues().put(option.name(), c.toString(value));
+            file.setRaw(option.name(), c.toString(value));
         } else {
             Class<?> _c = asTypeData(option).type;
             file.set(option.name(), _c.cast(value));
@@ -121,9 +148,7 @@ public abstract class AbstractOptionsOpMode extends AbstractTeleOp {
      */
     private void initLoad() {
         for (Enum option : optionsList) {
-            try {
-                file.get(option.name(), String.class);
-            } catch (IllegalArgumentException e) {
+            if (!file.contains(option.name())) {
                 store(option, asTypeData(option).fallback);
             }
         }
@@ -138,22 +163,24 @@ public abstract class AbstractOptionsOpMode extends AbstractTeleOp {
     }
 
     /**
-     * Helper function to display an entire page to the terminal
+     * Helper function to display an entire page to the terminal. Only the lines that actually
+     * changed since the last call are sent.
      */
     protected void display() {
         int base = selected - START_OFFSET;
         for (int i = 0; i < LINES; i++) {
-            displayLine(base + i);
+            displayLine(i, base + i);
         }
+        screen.flush(out);
     }
 
     /**
-     * Display a certain line
+     * Display a certain option on a certain line of the screen
      */
-    private void displayLine(int index) {
+    private void displayLine(int line, int index) {
 
+        screen.line(line);
         if (index < 0 || index >= optionsList.length) {
-            WebInterface.out.println();
             return;
         }
 
@@ -161,21 +188,11 @@ public abstract class AbstractOptionsOpMode extends AbstractTeleOp {
         String value = file.getRaw(option.name());
 
         if (index == selected) {
-
-            WebInterface.out.printf(
-                    ">%-" + leftSpacing + "s%s%n",
-                    option.name(),
-                    Utility.center(String.format("< %s >", value), LINE_WIDTH - leftSpacing)
-            );
-
+            screen.append('>').append(option.name()).padTo(1 + leftSpacing)
+                    .appendCentered("< ", value, " >", LINE_WIDTH - leftSpacing);
         } else {
-
-            WebInterface.out.printf(
-                    " %-" + leftSpacing + "s%s%n",
-                    option.name(),
-                    Utility.center(value, LINE_WIDTH - leftSpacing)
-            );
-
+            screen.append(' ').append(option.name()).padTo(1 + leftSpacing)
+                    .appendCentered("", value, "", LINE_WIDTH - leftSpacing);
         }
     }
 
@@ -190,6 +207,7 @@ public abstract class AbstractOptionsOpMode extends AbstractTeleOp {
      */
     protected AbstractOptionsOpMode(String optionsFilePath, Class<? extends Enum<?>> options) {
         this.optionsList = options.getEnumConstants();
+        this.cache = new Object[optionsList.length];
 
         // determine the necessary amount of spacing to display comfortably
         int longest = 0;
@@ -206,6 +224,13 @@ public abstract class AbstractOptionsOpMode extends AbstractTeleOp {
         }
     }
 
+    /**
+     * @return a copy of what is in the options file right now, e.g. to record what a session started from
+     */
+    public Map<String, String> getOptionValues() {
+        return file == null ? Collections.emptyMap() : file.copyValues();
+    }
+
     @Override
     protected Logger createLogger() {
         return null;
@@ -217,6 +242,12 @@ public abstract class AbstractOptionsOpMode extends AbstractTeleOp {
         // ignore
     }
 
+    @Override
+    public void refresh() {
+        screen.invalidate();
+        display();
+    }
+
     @Override
     protected void setup_act() {
         // ignore
@@ -233,9 +264,10 @@ public abstract class AbstractOptionsOpMode extends AbstractTeleOp {
         if (driver1.justTriggered()) {
             if (driver1.back.justPressed()) {
                 file.drop();
+                Arrays.fill(cache, null);
                 initLoad();
             } else if (driver1.start.justPressed()) {
-                file.writeToFile();
+                file.requestWrite(); // saved in the background, so the loop doesn't wait on the disk
             } else  {
 
                 // selecting
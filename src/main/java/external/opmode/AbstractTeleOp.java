@@ -2,6 +2,8 @@ package external.opmode;
 
 import external.gamepad.GamepadManager;
 
+import java.io.PrintStream;
+
 /**
  * This file was made by the electronVolts, FTC team 7393
  * Date Created: 9/12/16
@@ -36,4 +38,10 @@ public abstract class AbstractTeleOp extends HardwarelessAbstractOp {
     public void post_act() {
 
     }
+
+    @Override
+    public void printStats(PrintStream out) {
+        super.printStats(out);
+        driver1.getInputLatency().print(out);
+    }
 }
@@ -0,0 +1,215 @@
+package external.opmode;
+
+import external.util.Histogram;
+import external.util.InputExtractor;
+
+import java.io.PrintStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a loop at a fixed rate. Iterations are scheduled against absolute deadlines, so the period
+ * does not drift with however long the body takes.
+ * <p>
+ * To keep jitter low, the scheduler parks the thread until shortly before each deadline, then
+ * busy-spins for the rest of the wait.
+ * </p>
+ * It records how late every iteration started (jitter), and how far every overrunning iteration
+ * went past its deadline. A scheduler keeps the statistics of one loop, so every loop needs its own.
+ */
+public class FixedRateLoopScheduler implements LoopScheduler {
+
+    /**
+     * What to do when an iteration runs past the start of the next one
+     */
+    public enum OverrunPolicy {
+        /**
+         * Run the missed iterations back to back until the loop is on schedule again
+         */
+        CATCH_UP,
+        /**
+         * Forget the missed iterations and continue at the next deadline that is still in the future
+         */
+        SKIP,
+    }
+
+    private final long periodNanos;
+    private final OverrunPolicy policy;
+    private final long spinNanos;
+
+    private final Histogram jitter = new Histogram("jitter");
+    private final Histogram overrun = new Histogram("overrun");
+    private long iterations, overruns, skipped;
+
+    /**
+     * @param targetHz  how many times per second to run the loop
+     * @param policy    what to do when an iteration takes longer than one period
+     * @param spinNanos how long before each deadline to stop parking and start busy-spinning, 0 to never spin
+     */
+    public FixedRateLoopScheduler(double targetHz, OverrunPolicy policy, long spinNanos) {
+        if (targetHz <= 0) {
+            throw new IllegalArgumentException("targetHz must be positive");
+        }
+        this.periodNanos = Math.round(1e9 / targetHz);
+        this.policy = policy;
+        this.spinNanos = Math.max(0, spinNanos);
+    }
+
+    /**
+     * Creates a scheduler that skips missed iterations and spins for the last 100us before each deadline
+     *
+     * @param targetHz how many times per second to run the loop
+     */
+    public FixedRateLoopScheduler(double targetHz) {
+        this(targetHz, OverrunPolicy.SKIP, 100_000);
+    }
+
+    @Override
+    public void run(InputExtractor<Boolean> condition, Runnable body) throws InterruptedException {
+        long deadline = System.nanoTime();
+        while (condition.getValue()) {
+            jitter.record(System.nanoTime() - deadline);
+
+            body.run();
+            iterations++;
+
+            deadline = nextDeadline(deadline);
+            waitUntil(deadline);
+        }
+    }
+
+    /**
+     * Iterations run on the executor's own schedule, so they never spin: its threads are shared
+     * with other loops and can't be kept busy waiting
+     */
+    @Override
+    public CompletableFuture<Void> schedule(ScheduledExecutorService executor, InputExtractor<Boolean> condition,
+                                            Runnable body) {
+        ScheduledLoop loop = new ScheduledLoop(executor, condition, body);
+        try {
+            executor.execute(loop);
+        } catch (RejectedExecutionException e) {
+            loop.done.completeExceptionally(e);
+        }
+        return loop.done;
+    }
+
+    /**
+     * One loop started by {@link #schedule}, each run is one iteration
+     */
+    private class ScheduledLoop implements Runnable {
+        private final ScheduledExecutorService executor;
+        private final InputExtractor<Boolean> condition;
+        private final Runnable body;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private long deadline = System.nanoTime();
+
+        ScheduledLoop(ScheduledExecutorService executor, InputExtractor<Boolean> condition, Runnable body) {
+            this.executor = executor;
+            this.condition = condition;
+            this.body = body;
+        }
+
+        @Override
+        public void run() {
+            if (done.isDone()) return; // cancelled
+            try {
+                if (!condition.getValue()) {
+                    done.complete(null);
+                    return;
+                }
+                jitter.record(System.nanoTime() - deadline);
+
+                body.run();
+                iterations++;
+
+                deadline = nextDeadline(deadline);
+                executor.schedule(this, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (RuntimeException | Error e) {
+                done.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Called after every iteration, counts an overrun if it ended past the next deadline
+     *
+     * @param deadline when the iteration that just ended was supposed to start
+     * @return when the next iteration should start
+     */
+    private long nextDeadline(long deadline) {
+        deadline += periodNanos;
+        long now = System.nanoTime();
+        if (now > deadline) {
+            overruns++;
+            overrun.record(now - deadline);
+            if (policy == OverrunPolicy.SKIP) {
+                long missed = (now - deadline) / periodNanos + 1;
+                skipped += missed;
+                deadline += missed * periodNanos;
+            }
+        }
+        return deadline;
+    }
+
+    private void waitUntil(long deadline) throws InterruptedException {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > spinNanos) {
+            LockSupport.parkNanos(remaining - spinNanos);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        while (deadline - System.nanoTime() > 0) {
+            Thread.onSpinWait();
+        }
+    }
+
+    public long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    /**
+     * @return how late each iteration started compared to its deadline, in nanoseconds
+     */
+    public Histogram getJitter() {
+        return jitter;
+    }
+
+    /**
+     * @return how far each overrunning iteration ran past the next deadline, in nanoseconds
+     */
+    public Histogram getOverrun() {
+        return overrun;
+    }
+
+    public long getIterations() {
+        return iterations;
+    }
+
+    public long getOverruns() {
+        return overruns;
+    }
+
+    /**
+     * @return the amount of iterations left out because of {@link OverrunPolicy#SKIP}
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Print the scheduling statistics
+     *
+     * @param out where to print them
+     */
+    public void print(PrintStream out) {
+        out.printf("loop at %.1f Hz: %d iterations, %d overruns, %d skipped%n",
+                1e9 / periodNanos, iterations, overruns, skipped);
+        jitter.print(out);
+        overrun.print(out);
+    }
+}
@@ -4,6 +4,7 @@ import external.webinterface.VirtualGamepad;
 import external.util.Logger;
 
 import java.io.File;
+import java.io.PrintStream;
 
 /**
  * This file was made by the electronVolts, FTC team 7393
@@ -15,6 +16,12 @@ public abstract class HardwarelessAbstractOp {
 
     private Logger logger;
     public VirtualGamepad gamepad1;
+    /**
+     * Where the opmode's telemetry goes, e.g. the web interface console
+     */
+    public PrintStream out;
+
+    private final LoopTimings timings = new LoopTimings();
 
     /**
      * This is implemented by the opmode to log values
@@ -91,13 +98,25 @@ public abstract class HardwarelessAbstractOp {
 
     public void loop() {
 
+        long t0 = System.nanoTime();
         pre_act();
 
+        long t1 = System.nanoTime();
         if (logger != null) logger.act();
 
+        long t2 = System.nanoTime();
         act();
+
+        long t3 = System.nanoTime();
         post_act();
 
+        long t4 = System.nanoTime();
+        timings.preAct.record(t1 - t0);
+        timings.logger.record(t2 - t1);
+        timings.act.record(t3 - t2);
+        timings.postAct.record(t4 - t3);
+        timings.total.record(t4 - t0);
+
     }
 
     public void stop() {
@@ -106,4 +125,27 @@ public abstract class HardwarelessAbstractOp {
         end();
     }
 
+    /**
+     * Called between loops when the output has to be drawn again from scratch, e.g. because
+     * another client started watching it. Opmodes that only send what changed should override this.
+     */
+    public void refresh() {
+    }
+
+    /**
+     * Print the statistics gathered while the opmode ran
+     *
+     * @param out where to print them
+     */
+    public void printStats(PrintStream out) {
+        timings.print(out);
+    }
+
+    /**
+     * @return how long each phase of {@link #loop()} has taken so far
+     */
+    public LoopTimings getLoopTimings() {
+        return timings;
+    }
+
 }
@@ -0,0 +1,36 @@
+package external.opmode;
+
+import external.util.InputExtractor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Decides when each iteration of an opmode loop runs
+ *
+ * @see FixedRateLoopScheduler
+ */
+public interface LoopScheduler {
+
+    /**
+     * Run the body over and over for as long as the condition holds
+     *
+     * @param condition checked before every iteration, the loop ends once it gives false
+     * @param body      one iteration of the loop, e.g. {@link HardwarelessAbstractOp#loop()}
+     * @throws InterruptedException if the thread is interrupted while waiting for the next iteration
+     */
+    void run(InputExtractor<Boolean> condition, Runnable body) throws InterruptedException;
+
+    /**
+     * Run the body over and over for as long as the condition holds, without blocking a thread:
+     * every iteration is a task on the executor, which schedules the next one. The executor can
+     * be shared by many loops.
+     *
+     * @param executor  runs the iterations
+     * @param condition checked before every iteration, the loop ends once it gives false
+     * @param body      one iteration of the loop
+     * @return completes once the condition gives false, or exceptionally with whatever the body threw.
+     * Cancelling it ends the loop before its next iteration
+     */
+    CompletableFuture<Void> schedule(ScheduledExecutorService executor, InputExtractor<Boolean> condition, Runnable body);
+}
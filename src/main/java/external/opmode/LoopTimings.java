@@ -0,0 +1,42 @@
+package external.opmode;
+
+import external.util.Histogram;
+
+import java.io.PrintStream;
+
+/**
+ * How long each phase of {@link HardwarelessAbstractOp#loop()} took, over every loop so far
+ */
+public class LoopTimings {
+
+    public final Histogram preAct = new Histogram("pre_act");
+    public final Histogram logger = new Histogram("logger");
+    public final Histogram act = new Histogram("act");
+    public final Histogram postAct = new Histogram("post_act");
+    public final Histogram total = new Histogram("total");
+
+    /**
+     * Forget every recorded timing
+     */
+    public void reset() {
+        preAct.reset();
+        logger.reset();
+        act.reset();
+        postAct.reset();
+        total.reset();
+    }
+
+    /**
+     * Print a summary of every phase
+     *
+     * @param out where to print it
+     */
+    public void print(PrintStream out) {
+        out.println("loop phase timings:");
+        preAct.print(out);
+        logger.print(out);
+        act.print(out);
+        postAct.print(out);
+        total.print(out);
+    }
+}
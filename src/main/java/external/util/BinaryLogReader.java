@@ -0,0 +1,114 @@
+package external.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+
+/**
+ * Reads log files written by {@link BinaryLogger} and converts them to the same csv format that
+ * {@link Logger} writes. This is meant to be run offline, not on the robot.
+ * <p>
+ * Usage: {@code BinaryLogReader <binary log> [csv output]}
+ * </p>
+ *
+ * @see BinaryLogger
+ */
+public class BinaryLogReader {
+
+    /**
+     * @return the amount of dropped samples recorded at the end of the log, or -1 if the log was cut off
+     */
+    public static long toCsv(InputStream in, PrintStream out) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+
+        if (data.readInt() != BinaryLogger.MAGIC) {
+            throw new IOException("Not a binary log file");
+        }
+        short version = data.readShort();
+        if (version != BinaryLogger.VERSION) {
+            throw new IOException("Unsupported binary log version " + version);
+        }
+
+        int columns = data.readInt();
+        byte[] types = new byte[columns];
+        StringBuilder titles = new StringBuilder();
+        for (int i = 0; i < columns; i++) {
+            types[i] = data.readByte();
+            if (i > 0) titles.append(",");
+            titles.append(data.readUTF());
+        }
+        out.print(titles.append("\n"));
+
+        DecimalFormat df = new DecimalFormat("#.#####");
+        df.setRoundingMode(RoundingMode.HALF_UP);
+
+        StringBuilder line = new StringBuilder();
+        try {
+            while (true) {
+                int rows = data.readInt();
+                if (rows < 0) {
+                    return data.readLong();
+                }
+
+                long[][] block = new long[columns][rows];
+                for (int column = 0; column < columns; column++) {
+                    for (int row = 0; row < rows; row++) {
+                        block[column][row] = types[column] == Logger.Column.TYPE_BOOLEAN ? data.readByte() : data.readLong();
+                    }
+                }
+
+                for (int row = 0; row < rows; row++) {
+                    line.setLength(0);
+                    line.append(df.format(1e-6 * block[0][row]));
+                    for (int column = 1; column < columns; column++) {
+                        line.append(",");
+                        long value = block[column][row];
+                        switch (types[column]) {
+                            case Logger.Column.TYPE_LONG:
+                                line.append(value);
+                                break;
+                            case Logger.Column.TYPE_BOOLEAN:
+                                line.append(value != 0);
+                                break;
+                            default:
+                                line.append(Double.longBitsToDouble(value));
+                        }
+                    }
+                    out.print(line.append("\n"));
+                }
+            }
+        } catch (EOFException e) {
+            // the logger didn't get to finish the file, keep what was there
+            return -1;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: BinaryLogReader <binary log> [csv output]");
+            return;
+        }
+
+        File input = new File(args[0]);
+        File output = new File(args.length > 1 ? args[1] : args[0] + ".csv");
+        try (InputStream in = new BufferedInputStream(new FileInputStream(input));
+             PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(output)))) {
+            long dropped = toCsv(in, out);
+            if (dropped < 0) {
+                System.out.println("The log was cut off, converted what was there");
+            } else if (dropped > 0) {
+                System.out.printf("%d samples were dropped while logging%n", dropped);
+            }
+        }
+        System.out.println("Wrote " + output);
+    }
+}
@@ -0,0 +1,268 @@
+package external.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A Logger that keeps file I/O off the loop thread.
+ * <p>
+ * {@link #act()} only samples every column into a preallocated ring buffer. A background writer
+ * thread drains the ring into the log file in a compact binary columnar format, which can be turned
+ * into a csv afterwards with {@link BinaryLogReader}. Columns made with {@link Logger.DoubleColumn},
+ * {@link Logger.LongColumn} and {@link Logger.BooleanColumn} are sampled without allocating.
+ * </p>
+ * <p>
+ * File format (big-endian): the int {@link #MAGIC}, a short {@link #VERSION}, an int column count
+ * (including the time column), then for each column a type byte and its header as modified UTF-8.
+ * After that come blocks: an int row count, then the values of the first column for every row in
+ * the block, then the values of the second column, and so on. Doubles and longs take 8 bytes,
+ * booleans 1. The first column is always the time in nanoseconds since {@link #start(File)}. A
+ * row count of -1 ends the file, followed by a long with the amount of dropped samples.
+ * </p>
+ *
+ * @see BinaryLogReader
+ */
+public class BinaryLogger extends Logger {
+
+    /**
+     * What to do when the loop logs faster than the writer can keep up
+     */
+    public enum OverflowPolicy {
+        /**
+         * Throw the new sample away and count it as dropped
+         */
+        DROP_NEWEST,
+        /**
+         * Wait on the loop thread until the writer has made room
+         */
+        BLOCK,
+    }
+
+    static final int MAGIC = 0x45564c47; // "EVLG"
+    static final short VERSION = 1;
+
+    private final OverflowPolicy policy;
+    private final int capacity;
+    private final int stride;
+    private final int blockRows;
+    private final byte[] types;
+    private final Column[] columnArray;
+
+    // row-major ring of samples, every row is the time followed by one long per column
+    private final long[] ring;
+    private final AtomicLong head = new AtomicLong(); // rows written by act()
+    private final AtomicLong tail = new AtomicLong(); // rows consumed by the writer
+    private final AtomicLong dropped = new AtomicLong();
+
+    private long logStart;
+    private volatile boolean running;
+    private Thread writer;
+    private FileChannel channel;
+    private volatile IOException writeError;
+
+    /**
+     * @param beforeTimestamp the text to put before the timestamp in the filename
+     * @param afterTimestamp  the text to put after the timestamp in the filename
+     * @param columns         the columns that will be written to the file
+     * @param capacity        how many samples the ring buffer holds before the overflow policy kicks in
+     * @param policy          what to do when the ring buffer is full
+     */
+    public BinaryLogger(String beforeTimestamp, String afterTimestamp, List<? extends Column> columns,
+                        int capacity, OverflowPolicy policy) {
+        super(beforeTimestamp, afterTimestamp, columns);
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.policy = policy;
+        this.capacity = capacity;
+        this.columnArray = columns.toArray(new Column[0]);
+        this.stride = columnArray.length + 1;
+        this.blockRows = Math.min(capacity, 1024);
+        this.ring = new long[capacity * stride];
+
+        types = new byte[stride];
+        types[0] = Column.TYPE_LONG;
+        for (int i = 0; i < columnArray.length; i++) {
+            types[i + 1] = columnArray[i].type();
+        }
+    }
+
+    /**
+     * Logs into a 4096 sample ring buffer, dropping new samples when it is full
+     *
+     * @param beforeTimestamp the text to put before the timestamp in the filename
+     * @param afterTimestamp  the text to put after the timestamp in the filename
+     * @param columns         the columns that will be written to the file
+     */
+    public BinaryLogger(String beforeTimestamp, String afterTimestamp, List<? extends Column> columns) {
+        this(beforeTimestamp, afterTimestamp, columns, 4096, OverflowPolicy.DROP_NEWEST);
+    }
+
+    /**
+     * open the file, write the header and start the writer thread
+     */
+    @Override
+    public boolean start(File dir) {
+        File file = newLogFile(dir);
+        try {
+            channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            writeFully(ByteBuffer.wrap(header()));
+        } catch (IOException e) {
+            return false;
+        }
+
+        logStart = System.nanoTime();
+        running = true;
+        writer = new Thread(this::drain, "logger-" + getFileName());
+        writer.setDaemon(true);
+        writer.start();
+        return true;
+    }
+
+    private byte[] header() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(stride);
+        out.writeByte(types[0]);
+        out.writeUTF("time");
+        for (Column column : columnArray) {
+            out.writeByte(column.type());
+            out.writeUTF(column.getHeader());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * copy a sample of every column into the ring buffer
+     */
+    @Override
+    public void act() {
+        if (!running) return;
+
+        long row = head.get();
+        if (row - tail.get() >= capacity) {
+            if (policy == OverflowPolicy.DROP_NEWEST) {
+                dropped.incrementAndGet();
+                return;
+            }
+            while (row - tail.get() >= capacity && running) {
+                LockSupport.parkNanos(10_000);
+            }
+            if (!running) return;
+        }
+
+        int base = (int) (row % capacity) * stride;
+        ring[base] = System.nanoTime() - logStart;
+        for (int i = 0; i < columnArray.length; i++) {
+            ring[base + i + 1] = columnArray[i].sample();
+        }
+        head.lazySet(row + 1); // publish the row to the writer
+    }
+
+    /**
+     * The writer thread: move rows from the ring buffer to the file one block at a time
+     */
+    private void drain() {
+        int rowBytes = 0;
+        for (byte type : types) {
+            rowBytes += type == Column.TYPE_BOOLEAN ? 1 : 8;
+        }
+        ByteBuffer block = ByteBuffer.allocateDirect(4 + blockRows * rowBytes);
+
+        try {
+            while (true) {
+                boolean stopping = !running;
+                long from = tail.get();
+                long available = head.get() - from;
+                if (available == 0) {
+                    if (stopping) break;
+                    LockSupport.parkNanos(1_000_000);
+                    continue;
+                }
+                int rows = (int) Math.min(available, blockRows);
+
+                block.clear();
+                block.putInt(rows);
+                for (int column = 0; column < stride; column++) {
+                    byte type = types[column];
+                    for (long row = from; row < from + rows; row++) {
+                        long value = ring[(int) (row % capacity) * stride + column];
+                        if (type == Column.TYPE_BOOLEAN) {
+                            block.put((byte) value);
+                        } else {
+                            block.putLong(value);
+                        }
+                    }
+                }
+                tail.lazySet(from + rows); // the rows are copied out, give the space back
+                block.flip();
+                writeFully(block);
+            }
+
+            block.clear();
+            block.putInt(-1);
+            block.putLong(dropped.get());
+            block.flip();
+            writeFully(block);
+        } catch (IOException e) {
+            writeError = e;
+            running = false;
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * stop sampling, wait for the writer to flush everything and close the file
+     */
+    @Override
+    public void stop() {
+        if (writer == null) return;
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+        if (writeError != null) {
+            writeError.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the amount of samples thrown away because the ring buffer was full
+     */
+    public long getDroppedSamples() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the amount of samples taken so far, including dropped ones
+     */
+    public long getSamples() {
+        return head.get() + dropped.get();
+    }
+}
@@ -1,7 +1,7 @@
 package external.util;
 
 public class Cell<T> {
-    T value;
+    volatile T value;
 
     public Cell (T in) {
         value = in;
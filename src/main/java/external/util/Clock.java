@@ -0,0 +1,19 @@
+package external.util;
+
+/**
+ * A source of time, so code that needs the time can be run against a virtual clock
+ *
+ * @see VirtualClock
+ */
+public interface Clock {
+
+    /**
+     * The real clock, backed by {@link System#nanoTime()}
+     */
+    Clock SYSTEM = System::nanoTime;
+
+    /**
+     * @return the current time in nanoseconds, only meaningful when compared to other readings of the same clock
+     */
+    long nanoTime();
+}
@@ -9,6 +9,9 @@ import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
 
 /**
  * This file was made by the electronVolts, FTC team 7393
@@ -18,6 +21,8 @@ import java.util.List;
  */
 public class Logger {
     public static class Column {
+        static final byte TYPE_DOUBLE = 0, TYPE_LONG = 1, TYPE_BOOLEAN = 2;
+
         private final String header;
         private final InputExtractor<?> input;
 
@@ -25,28 +30,112 @@ public class Logger {
             this.header = header;
             this.input = input;
         }
+
+        public String getHeader() {
+            return header;
+        }
+
+        /**
+         * @return the type the column's samples are stored as in a binary log
+         * @see BinaryLogger
+         */
+        byte type() {
+            return TYPE_DOUBLE;
+        }
+
+        /**
+         * Read the input and pack it into a long for a binary log. Numbers are stored as double
+         * bits, booleans as 1 or 0, and anything else as NaN.
+         *
+         * @see BinaryLogger
+         */
+        long sample() {
+            Object value = input.getValue();
+            if (value instanceof Boolean) return (Boolean) value ? 1 : 0;
+            double d = value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+            return Double.doubleToRawLongBits(d);
+        }
     }
 
-    private static final DecimalFormat df = new DecimalFormat("#.#####");
-    static {
-        df.setRoundingMode(RoundingMode.HALF_UP);
+    /**
+     * A column of doubles that can be sampled without boxing
+     */
+    public static class DoubleColumn extends Column {
+        private final DoubleSupplier input;
+
+        public DoubleColumn(String header, DoubleSupplier input) {
+            super(header, input::getAsDouble);
+            this.input = input;
+        }
+
+        @Override
+        long sample() {
+            return Double.doubleToRawLongBits(input.getAsDouble());
+        }
+    }
+
+    /**
+     * A column of longs (or ints) that can be sampled without boxing
+     */
+    public static class LongColumn extends Column {
+        private final LongSupplier input;
+
+        public LongColumn(String header, LongSupplier input) {
+            super(header, input::getAsLong);
+            this.input = input;
+        }
+
+        @Override
+        byte type() {
+            return TYPE_LONG;
+        }
+
+        @Override
+        long sample() {
+            return input.getAsLong();
+        }
     }
-    
-    private static SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy_MM_dd_HH_mm_ss");
+
+    /**
+     * A column of booleans that can be sampled without boxing
+     */
+    public static class BooleanColumn extends Column {
+        private final BooleanSupplier input;
+
+        public BooleanColumn(String header, BooleanSupplier input) {
+            super(header, input::getAsBoolean);
+            this.input = input;
+        }
+
+        @Override
+        byte type() {
+            return TYPE_BOOLEAN;
+        }
+
+        @Override
+        long sample() {
+            return input.getAsBoolean() ? 1 : 0;
+        }
+    }
+
+    // DecimalFormat is not thread safe, so every logger gets its own
+    private final DecimalFormat df = new DecimalFormat("#.#####");
 
     private long logStart;
     private PrintStream fileStream;
+    private final StringBuilder line = new StringBuilder();
     private final String beforeTimestamp, afterTimestamp;
     private String titles;
     private String fullFileName;
-    private final List<Column> columns;
+    protected final List<? extends Column> columns;
 
     /**
      * @param beforeTimestamp the text to put before the timestamp in the filename
      * @param afterTimestamp  the text to put after the timestamp in the filename
      * @param columns the columns that will be written to the file
      */
-    public Logger(String beforeTimestamp, String afterTimestamp, List<Column> columns) {
+    public Logger(String beforeTimestamp, String afterTimestamp, List<? extends Column> columns) {
+        df.setRoundingMode(RoundingMode.HALF_UP);
         this.beforeTimestamp = beforeTimestamp;
         this.afterTimestamp = afterTimestamp;
         StringBuilder sb = new StringBuilder("time");
@@ -57,22 +146,30 @@ public class Logger {
         this.columns = columns;
     }
 
+    /**
+     * pick the name of the log file from the current date
+     *
+     * @param dir the directory to put the file in
+     * @return the file to log to
+     */
+    protected File newLogFile(File dir) {
+        String date = new SimpleDateFormat("yyyy_MM_dd_HH_mm_ss").format(new Date());
+
+        fullFileName = beforeTimestamp + date + afterTimestamp;
+        return new File(dir, fullFileName);
+    }
+
     /**
      * write the column titles to the file
      */
     public boolean start(File dir) {
         logStart = System.nanoTime();
-        
-        long millis = System.currentTimeMillis();
-        Date now = new Date(millis);
-        String date = dateFormat.format(now);
 
-        fullFileName = beforeTimestamp + date + afterTimestamp;
-        File file = new File(dir, fullFileName);
+        File file = newLogFile(dir);
         try {
             fileStream = new PrintStream(new FileOutputStream(file));
 
-            fileStream.printf(titles);
+            fileStream.print(titles);
             return true;
         } catch (IOException e) {
             return false;
@@ -85,11 +182,12 @@ public class Logger {
     public void act() {
         if (fileStream != null) {
             long now = System.nanoTime();
-            StringBuilder line = new StringBuilder(df.format(1e-6 * (now - logStart)));
+            line.setLength(0);
+            line.append(df.format(1e-6 * (now - logStart)));
             for (Column column : columns) {
                 line.append(",").append(column.input.getValue());
             }
-            fileStream.printf(line.append("\n").toString());
+            fileStream.print(line.append("\n"));
         }
     }
 
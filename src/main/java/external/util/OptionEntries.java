@@ -2,8 +2,6 @@ package external.util;
 
 import external.gamepad.GamepadManager;
 
-import java.util.Collections;
-
 /**
  * This is the interface for defining a list of settable Options.
  * <br>
@@ -270,16 +268,17 @@ public interface OptionEntries {
         public static <T extends Enum<?>> TypeData<Enum<?>> enumType(Class<T> e) {
             TypeData<Enum<?>> t = new TypeData<>();
 
-            CircularArrayList<Enum<?>> variants = new CircularArrayList<>();
-            Collections.addAll(variants, e.getEnumConstants());
+            // step from the current value instead of keeping a cursor, since TypeData is shared
+            // between every opmode that uses the same OptionEntries
+            Enum<?>[] variants = e.getEnumConstants();
 
             return t
-                    .withFallback(variants.get(0))
+                    .withFallback(variants[0])
                     .withMutator((gamepad, value) -> {
                         if (gamepad.right_bumper.justPressed()) {
-                            return variants.next();
+                            return variants[(value.ordinal() + 1) % variants.length];
                         } else if (gamepad.left_bumper.justPressed()) {
-                            return variants.prev();
+                            return variants[(value.ordinal() - 1 + variants.length) % variants.length];
                         } else {
                             return null;
                         }
@@ -7,21 +7,60 @@ import org.json.simple.parser.ParseException;
 
 import java.io.*;
 import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This file was made by the electronVolts, FTC team 7393
  * <p>
  * This class stores and retrieves values from a file. It should probably be
  * replaced by an XML or JSON interpreter.
+ * <p>
+ * Saving is crash-safe: the values are written to a temporary file, synced to disk, then renamed
+ * over the real file, so the file on disk is always either the old or the new version. Saves can
+ * also be done in the background with {@link #requestWrite()}, which keeps the file I/O off the
+ * loop thread. Every method is safe to call while a background save is running.
+ * </p>
  */
 public class OptionsFile {
 
+    /**
+     * How long {@link #requestWrite()} waits for more changes before saving
+     */
+    public static final long DEFAULT_WRITE_DELAY_MILLIS = 500;
+
+    // one thread shared by every OptionsFile for background saves
+    private static final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "options-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
     private final Converters converters;
 
     private JSONObject values;
+    // the values as they were last read from or written to the file
+    private JSONObject persisted;
+    // the values the pending background save will write, null when there is none
+    private JSONObject requested;
+    // the newest values a save has started writing, null once it has finished
+    private JSONObject saving;
+    // every snapshot that gets written is numbered, so an older one never replaces a newer one on disk
+    private long generation, savingGeneration;
     private final File physicalFile;
 
+    private final Object writeLock = new Object();
+    // the generation on disk, only touched while holding writeLock
+    private long writtenGeneration;
+    private ScheduledFuture<?> pendingWrite;
+
     /**
      * @param converters the utilities that convert strings to and from objects
      * @param values     the map of values to be loaded
@@ -40,6 +79,7 @@ public class OptionsFile {
         }
 
         this.values = new JSONObject(values);
+        this.persisted = new JSONObject();
         writeToFile();
 
     }
@@ -56,60 +96,214 @@ public class OptionsFile {
     public OptionsFile(Converters converters, File file) throws IOException, ParseException {
         this.converters = converters;
         this.physicalFile = file;
-        try {
-            values = (JSONObject) new JSONParser().parse(new BufferedReader(new FileReader(file)));
-        } catch (FileNotFoundException | ParseException e) {
-            file.delete();
-            if (!file.createNewFile()) {
-                throw new IOException("An options storage file was not found, but could not create a new one");
+        try (Reader r = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            values = (JSONObject) new JSONParser().parse(r);
+        } catch (FileNotFoundException e) {
+            values = new JSONObject();
+        } catch (ParseException | ClassCastException e) {
+            // keep the broken file around for inspection instead of deleting it
+            File corrupt = new File(file.getPath() + ".corrupt");
+            if (!file.renameTo(corrupt)) {
+                throw new IOException("The options storage file is corrupt, and could not be moved out of the way");
             }
             values = new JSONObject();
         }
+        persisted = new JSONObject(values);
     }
 
     /**
-     * store the values to a file
+     * store the values to a file, replacing it atomically. Cancels any pending background save.
      *
      * @return whether or not it worked
      */
     public boolean writeToFile() {
+        JSONObject snapshot;
+        long snapshotGeneration;
+        synchronized (this) {
+            snapshot = new JSONObject(values);
+            // this write covers whatever a pending background save would have written
+            cancelPendingWrite();
+            snapshotGeneration = startSaving(snapshot);
+        }
+        return write(snapshot, snapshotGeneration);
+    }
+
+    private void cancelPendingWrite() {
+        if (pendingWrite != null) {
+            pendingWrite.cancel(false);
+            pendingWrite = null;
+        }
+        requested = null;
+    }
+
+    /**
+     * Number a snapshot that is about to be written, call while holding this
+     *
+     * @return the snapshot's generation
+     */
+    private long startSaving(JSONObject snapshot) {
+        saving = snapshot;
+        savingGeneration = ++generation;
+        return savingGeneration;
+    }
+
+    private boolean write(JSONObject snapshot, long snapshotGeneration) {
+        synchronized (writeLock) {
+            if (snapshotGeneration < writtenGeneration) {
+                return true; // a newer snapshot is already on disk
+            }
+            boolean written = writeFile(snapshot);
+            if (written) {
+                writtenGeneration = snapshotGeneration;
+            }
+            synchronized (this) {
+                if (written) {
+                    persisted = snapshot;
+                }
+                if (savingGeneration == snapshotGeneration) {
+                    saving = null;
+                }
+            }
+            return written;
+        }
+    }
+
+    private boolean writeFile(JSONObject snapshot) {
+        File temp = new File(physicalFile.getPath() + ".tmp");
         try {
-            BufferedWriter w = new BufferedWriter(new FileWriter(physicalFile));
-            values.writeJSONString(w);
-            w.close();
+            try (FileOutputStream stream = new FileOutputStream(temp)) {
+                Writer w = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+                snapshot.writeJSONString(w);
+                w.flush();
+                stream.getFD().sync();
+            }
+            try {
+                Files.move(temp.toPath(), physicalFile.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), physicalFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
         } catch (IOException e) {
+            temp.delete();
             return false;
         }
         return true;
     }
 
+    /**
+     * Save the values to the file in the background, after {@link #DEFAULT_WRITE_DELAY_MILLIS}
+     *
+     * @see #requestWrite(long)
+     */
+    public void requestWrite() {
+        requestWrite(DEFAULT_WRITE_DELAY_MILLIS);
+    }
+
+    /**
+     * Save the values as they are now to the file in the background. Another request before the
+     * save starts replaces what will be saved, so many requests in a row only cause one write.
+     *
+     * @param delayMillis how long to wait for more requests before saving
+     */
+    public synchronized void requestWrite(long delayMillis) {
+        requested = new JSONObject(values);
+        if (pendingWrite == null) {
+            pendingWrite = writer.schedule(this::writeBehind, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void writeBehind() {
+        JSONObject snapshot;
+        long snapshotGeneration = 0;
+        synchronized (this) {
+            snapshot = requested;
+            pendingWrite = null;
+            requested = null;
+            if (snapshot != null) {
+                snapshotGeneration = startSaving(snapshot);
+            }
+        }
+        if (snapshot != null && !write(snapshot, snapshotGeneration)) {
+            System.out.println("Could not save options to " + physicalFile);
+        }
+    }
+
+    /**
+     * If a background save was requested, do it now instead, on this thread
+     *
+     * @return whether or not it worked, true if nothing needed saving
+     */
+    public boolean flush() {
+        JSONObject snapshot;
+        long snapshotGeneration = 0;
+        synchronized (this) {
+            snapshot = requested;
+            cancelPendingWrite();
+            if (snapshot != null) {
+                snapshotGeneration = startSaving(snapshot);
+            }
+        }
+        return snapshot == null || write(snapshot, snapshotGeneration);
+    }
+
     /**
      * Request a drop of all stored data, refer to data stored in file
+     * <p>
+     * This goes back to the values of the latest save, without reading the file again. A save
+     * that was requested or is being written but hasn't finished yet counts, and will still be written.
+     * </p>
      * @return Operation success
      */
-    public boolean drop() {
-        try {
-            values = (JSONObject) new JSONParser().parse(new BufferedReader(new FileReader(physicalFile)));
-        } catch (IOException | ParseException e) {
-            return false;
-        }
+    public synchronized boolean drop() {
+        values = new JSONObject(requested != null ? requested : saving != null ? saving : persisted);
         return true;
     }
 
     /**
-     * @return A map of all the values from the file
+     * @return A map of all the values from the file. Only touch it while no background save is pending.
      */
     public Map<String, String> getValues() {
         return values;
     }
 
+    /**
+     * @return a copy of all the values as strings, safe to use while a background save is pending
+     */
+    public synchronized Map<String, String> copyValues() {
+        Map<String, String> copy = new TreeMap<>();
+        for (Object o : values.entrySet()) {
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            copy.put(String.valueOf(e.getKey()), String.valueOf(e.getValue()));
+        }
+        return copy;
+    }
+
+    /**
+     * @param tag the name of the value
+     * @return whether there is a value with the given tag
+     */
+    public synchronized boolean contains(String tag) {
+        return values.containsKey(tag);
+    }
+
+    /**
+     * set the string representation of a value, without converting it
+     *
+     * @param tag the name of the value
+     * @param raw the string representation of the value
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void setRaw(String tag, String raw) {
+        values.put(tag, raw);
+    }
+
     /**
      * set a value in the map
      *
      * @param tag    the name of the value
      * @param object the Object to put into the map
      */
-    public <T> void set(String tag, T object) {
+    public synchronized <T> void set(String tag, T object) {
 
         if (object == null) {
             values.put(tag, null);
@@ -140,7 +334,7 @@ public class OptionsFile {
      * @param tag     the name of the value
      * @param objects the array of objects to put in the map
      */
-    public <T> void setArray(String tag, T[] objects) {
+    public synchronized <T> void setArray(String tag, T[] objects) {
         //if the object is null, add a null value to the map
         if (objects == null) {
             values.put(tag, null);
@@ -174,7 +368,7 @@ public class OptionsFile {
      * @throws IllegalArgumentException if there is no converter for the given
      *                                  type
      */
-    public <T> T[] getArray(String tag, Class<T> clazz) {
+    public synchronized <T> T[] getArray(String tag, Class<T> clazz) {
         //get the converter for the specified class
         Converter<T> converter = converters.getConverter(clazz);
 
@@ -258,7 +452,7 @@ public class OptionsFile {
      * @param tag the name of the value
      * @return the string representation of the value
      */
-    public String getRaw(String tag) {
+    public synchronized String getRaw(String tag) {
         if (!values.containsKey(tag)) {
             throw new IllegalArgumentException();
         }
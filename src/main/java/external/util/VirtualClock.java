@@ -0,0 +1,23 @@
+package external.util;
+
+/**
+ * A clock that only moves when it is told to. Used to run opmodes faster than real time.
+ */
+public class VirtualClock implements Clock {
+
+    private volatile long now;
+
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+
+    /**
+     * Move the clock forward
+     *
+     * @param nanos how far to move it, in nanoseconds
+     */
+    public void advance(long nanos) {
+        now += nanos;
+    }
+}
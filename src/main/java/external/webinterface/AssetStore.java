@@ -0,0 +1,281 @@
+package external.webinterface;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Every static file the web interface serves, loaded from the classpath once and kept in memory.
+ * <p>
+ * Assets are the files in the {@value #ROOT} folder on the classpath, next to {@code index.html},
+ * so this works the same from the build directory and from a packaged jar, whatever the working
+ * directory is, and nothing else on the classpath is served. Text assets are gzipped ahead of
+ * time, and every asset has an ETag per encoding and a Last-Modified date so caches can keep it.
+ * </p>
+ * For development, {@link #watch(Path)} reloads assets from a source directory whenever they change.
+ */
+public class AssetStore {
+
+    /**
+     * One file that can be served
+     */
+    public static class Asset {
+        final String mimeType;
+        final byte[] content;
+        final byte[] gzipped; // null when gzip doesn't make it smaller
+        final String etag;
+        final String gzippedETag; // a different representation needs a different strong ETag
+        final String lastModified;
+
+        Asset(String path, byte[] content, long lastModifiedMillis) throws IOException {
+            this.mimeType = mimeTypeFor(path);
+            this.content = content;
+            this.gzipped = isCompressible(mimeType) ? gzip(content) : null;
+            String hash = hash(content);
+            this.etag = "\"" + hash + "\"";
+            this.gzippedETag = gzipped == null ? null : "\"" + hash + "-gz\"";
+            this.lastModified = HTTP_DATE.format(Instant.ofEpochMilli(lastModifiedMillis / 1000 * 1000));
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        public String getETag() {
+            return etag;
+        }
+
+        /**
+         * @return the ETag of the gzipped version, or null if it isn't served gzipped
+         */
+        public String getGzippedETag() {
+            return gzippedETag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+    }
+
+    /**
+     * The classpath folder the assets are in
+     */
+    public static final String ROOT = "web/";
+    private static final String INDEX = "index.html";
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+    private final Map<String, Asset> assets = new ConcurrentHashMap<>();
+
+    /**
+     * Load every asset from the {@value #ROOT} folder that holds {@code index.html}
+     *
+     * @param loader the class loader to find the assets with
+     * @throws IOException if there is no {@code index.html} or the assets could not be read
+     */
+    public AssetStore(ClassLoader loader) throws IOException {
+        URL index = loader.getResource(ROOT + INDEX);
+        if (index == null) {
+            throw new IOException("Couldn't find " + ROOT + INDEX + " on the classpath");
+        }
+
+        if (index.getProtocol().equals("jar")) {
+            JarURLConnection connection = (JarURLConnection) index.openConnection();
+            connection.setUseCaches(false);
+            try (JarFile jar = connection.getJarFile()) {
+                Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    JarEntry entry = entries.nextElement();
+                    String name = entry.getName();
+                    if (entry.isDirectory() || !name.startsWith(ROOT) || name.endsWith(".class")) continue;
+                    try (InputStream in = jar.getInputStream(entry)) {
+                        put("/" + name.substring(ROOT.length()), in.readAllBytes(), entry.getTime());
+                    }
+                }
+            }
+        } else {
+            Path root;
+            try {
+                root = Paths.get(index.toURI()).getParent();
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
+            }
+            try (Stream<Path> files = Files.walk(root)) {
+                for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                    if (file.toString().endsWith(".class")) continue;
+                    load(root, file);
+                }
+            }
+        }
+    }
+
+    private void put(String path, byte[] content, long lastModifiedMillis) throws IOException {
+        assets.put(path, new Asset(path, content, lastModifiedMillis));
+    }
+
+    private void load(Path root, Path file) throws IOException {
+        String path = "/" + root.relativize(file).toString().replace(File.separatorChar, '/');
+        put(path, Files.readAllBytes(file), Files.getLastModifiedTime(file).toMillis());
+    }
+
+    /**
+     * @param uri the requested path, "/" means the index page
+     * @return the asset at that path, or null if there is none
+     */
+    public Asset get(String uri) {
+        return assets.get(uri.equals("/") ? "/" + INDEX : uri);
+    }
+
+    /**
+     * @return the amount of assets loaded
+     */
+    public int size() {
+        return assets.size();
+    }
+
+    /**
+     * Build the response for a request of the given asset, honoring the request's caching and
+     * compression headers
+     *
+     * @param asset   the asset that was requested
+     * @param headers the request headers, with lowercase names
+     * @return the response to send
+     */
+    public static NanoHTTPD.Response respond(Asset asset, Map<String, String> headers) {
+        String acceptEncoding = headers.get("accept-encoding");
+        boolean gzip = asset.gzipped != null && acceptEncoding != null && acceptEncoding.contains("gzip");
+        String etag = gzip ? asset.gzippedETag : asset.etag;
+        String ifNoneMatch = headers.get("if-none-match");
+
+        NanoHTTPD.Response response;
+        if (ifNoneMatch != null ? matches(ifNoneMatch, etag) : asset.lastModified.equals(headers.get("if-modified-since"))) {
+            response = NanoHTTPD.newFixedLengthResponse(NanoHTTPD.Response.Status.NOT_MODIFIED, asset.mimeType, "");
+        } else {
+            byte[] body = gzip ? asset.gzipped : asset.content;
+            response = NanoHTTPD.newFixedLengthResponse(
+                    NanoHTTPD.Response.Status.OK,
+                    asset.mimeType,
+                    new ByteArrayInputStream(body),
+                    body.length
+            );
+            if (gzip) {
+                response.addHeader("Content-Encoding", "gzip");
+            }
+        }
+        response.addHeader("ETag", etag);
+        response.addHeader("Last-Modified", asset.lastModified);
+        response.addHeader("Cache-Control", "no-cache"); // always revalidate, it's cheap with the ETag
+        response.addHeader("Vary", "Accept-Encoding");
+        return response;
+    }
+
+    /**
+     * @param ifNoneMatch the value of an If-None-Match header, one or more ETags or *
+     * @param etag        the ETag of the representation that would be sent
+     * @return whether the client already has that representation
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) candidate = candidate.substring(2);
+            if (candidate.equals("*") || candidate.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reload assets from a source directory whenever they change there, for development. The
+     * directory should have the same layout as the {@value #ROOT} folder the assets came from.
+     *
+     * @param dir the directory to watch, e.g. src/main/resources/web
+     * @throws IOException if the directory can't be watched
+     */
+    public void watch(Path dir) throws IOException {
+        WatchService watcher = dir.getFileSystem().newWatchService();
+        try (Stream<Path> dirs = Files.walk(dir)) {
+            for (Path d : (Iterable<Path>) dirs.filter(Files::isDirectory)::iterator) {
+                d.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        }
+
+        Thread thread = new Thread(() -> {
+            while (true) {
+                WatchKey key;
+                try {
+                    key = watcher.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                Path parent = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) continue;
+                    Path file = parent.resolve((Path) event.context());
+                    if (!Files.isRegularFile(file)) continue;
+                    try {
+                        load(dir, file);
+                        System.out.println("Reloaded " + dir.relativize(file));
+                    } catch (IOException e) {
+                        // probably still being written, the next event will pick it up
+                    }
+                }
+                key.reset();
+            }
+        }, "asset-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static String mimeTypeFor(String path) {
+        String mime = NanoHTTPD.getMimeTypeForFile(path);
+        if (mime == null) mime = "application/octet-stream";
+        if (mime.startsWith("text/") || mime.endsWith("javascript") || mime.endsWith("json")) {
+            mime += "; charset=utf-8";
+        }
+        return mime;
+    }
+
+    private static boolean isCompressible(String mimeType) {
+        return mimeType.startsWith("text/") || mimeType.contains("javascript") || mimeType.contains("json")
+                || mimeType.contains("xml") || mimeType.contains("svg");
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(content);
+        }
+        return bytes.size() < content.length ? bytes.toByteArray() : null;
+    }
+
+    private static String hash(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
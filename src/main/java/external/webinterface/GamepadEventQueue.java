@@ -0,0 +1,97 @@
+package external.webinterface;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free single-producer single-consumer queue of timestamped button edges.
+ * <p>
+ * The socket thread offers an event every time a button changes, and the opmode thread drains
+ * them once per loop, so a press and release that both happen between two loops are never lost.
+ * Events are stored in preallocated arrays, so neither side allocates.
+ * </p>
+ * If the consumer falls so far behind that the queue fills up, new events are dropped and counted;
+ * the consumer should then resynchronize from {@link VirtualGamepad#getButtons()}.
+ */
+public class GamepadEventQueue {
+
+    /**
+     * Receives events drained from the queue
+     */
+    public interface Consumer {
+        /**
+         * @param nanos  when the event happened, according to the gamepad's clock
+         * @param button the button that changed
+         * @param down   whether the button went down (true) or up (false)
+         */
+        void onEvent(long nanos, VirtualGamepad.Button button, boolean down);
+    }
+
+    private static final VirtualGamepad.Button[] BUTTONS = VirtualGamepad.Button.values();
+
+    private final int mask;
+    private final long[] times;
+    private final int[] codes; // button ordinal << 1 | down
+
+    private final AtomicLong head = new AtomicLong(); // written by the producer
+    private final AtomicLong tail = new AtomicLong(); // written by the consumer
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param capacity the maximum amount of undrained events, rounded up to a power of two
+     */
+    public GamepadEventQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        mask = size - 1;
+        times = new long[size];
+        codes = new int[size];
+    }
+
+    /**
+     * Add an event. Only one thread may call this at a time.
+     *
+     * @return false if the queue was full and the event was dropped
+     */
+    public boolean offer(long nanos, VirtualGamepad.Button button, boolean down) {
+        long h = head.get();
+        if (h - tail.get() > mask) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        int i = (int) h & mask;
+        times[i] = nanos;
+        codes[i] = button.ordinal() << 1 | (down ? 1 : 0);
+        head.lazySet(h + 1); // publish
+        return true;
+    }
+
+    /**
+     * Hand every queued event to the consumer, oldest first. Only one thread may call this at a time.
+     *
+     * @return the amount of events drained
+     */
+    public int drain(Consumer consumer) {
+        long t = tail.get();
+        long h = head.get();
+        for (long n = t; n < h; n++) {
+            int i = (int) n & mask;
+            int code = codes[i];
+            consumer.onEvent(times[i], BUTTONS[code >>> 1], (code & 1) != 0);
+        }
+        tail.lazySet(h);
+        return (int) (h - t);
+    }
+
+    /**
+     * Throw away every queued event. Only the consumer thread may call this.
+     */
+    public void clear() {
+        tail.lazySet(head.get());
+    }
+
+    /**
+     * @return the total amount of events dropped because the queue was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+}
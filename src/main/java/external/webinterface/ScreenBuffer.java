@@ -0,0 +1,158 @@
+package external.webinterface;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * A fixed-size screen of text lines for telemetry that gets redrawn over and over.
+ * <p>
+ * Lines are written into preallocated rows with {@link #line(int)} and the append methods. Then
+ * {@link #flush(PrintStream)} sends only the lines that changed since the last flush, each as one
+ * update message: {@link #UPDATE}, the line index in decimal, {@link #SEPARATOR}, the content of
+ * the line, and a newline. The console in index.html replaces that line in place when it receives
+ * one, so moving a cursor one row costs two short messages instead of a whole screen.
+ * </p>
+ * Not thread safe, meant to be drawn and flushed from the opmode loop.
+ */
+public class ScreenBuffer {
+
+    /**
+     * Starts a line update message
+     */
+    public static final char UPDATE = '\u0001';
+    /**
+     * Separates the line index from the line content in an update message
+     */
+    public static final char SEPARATOR = '\u0002';
+
+    private final int width;
+    private final char[][] rows;
+    private final int[] lengths;
+    private final char[][] sent;
+    private final int[] sentLengths;
+    private final boolean[] dirty;
+    private final StringBuilder message;
+
+    private int row;
+
+    /**
+     * @param lines the amount of lines on the screen
+     * @param width the most characters a line can hold, anything past that is cut off
+     */
+    public ScreenBuffer(int lines, int width) {
+        this.width = width;
+        rows = new char[lines][width];
+        lengths = new int[lines];
+        sent = new char[lines][width];
+        sentLengths = new int[lines];
+        dirty = new boolean[lines];
+        message = new StringBuilder(width + 8);
+        invalidate();
+    }
+
+    public int getLines() {
+        return rows.length;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Clear a line and start writing to it
+     *
+     * @param index the line to write
+     * @return this, to chain appends
+     */
+    public ScreenBuffer line(int index) {
+        row = index;
+        lengths[index] = 0;
+        dirty[index] = true;
+        return this;
+    }
+
+    public ScreenBuffer append(char c) {
+        if (lengths[row] < width) {
+            rows[row][lengths[row]++] = c;
+        }
+        return this;
+    }
+
+    public ScreenBuffer append(CharSequence s) {
+        for (int i = 0; i < s.length(); i++) {
+            append(s.charAt(i));
+        }
+        return this;
+    }
+
+    /**
+     * Add spaces until the line is the given length
+     *
+     * @param column the length to pad the line to
+     * @return this, to chain appends
+     */
+    public ScreenBuffer padTo(int column) {
+        while (lengths[row] < column && lengths[row] < width) {
+            rows[row][lengths[row]++] = ' ';
+        }
+        return this;
+    }
+
+    /**
+     * Add text centered in a field of the given width, the same way {@link external.util.Utility#center} does.
+     * A prefix and suffix can be given so decorations don't have to be concatenated first.
+     *
+     * @param prefix     text that goes right before s, centered with it
+     * @param s          the text to center
+     * @param suffix     text that goes right after s, centered with it
+     * @param fieldWidth the width of the field to center in
+     * @return this, to chain appends
+     */
+    public ScreenBuffer appendCentered(CharSequence prefix, CharSequence s, CharSequence suffix, int fieldWidth) {
+        int padLength = fieldWidth - prefix.length() - s.length() - suffix.length();
+        int start = lengths[row];
+        if (padLength > 0) {
+            padTo(start + padLength - padLength / 2);
+        }
+        append(prefix).append(s).append(suffix);
+        if (padLength > 0) {
+            padTo(start + fieldWidth);
+        }
+        return this;
+    }
+
+    /**
+     * Make the next flush send every line, e.g. because a new client connected
+     */
+    public void invalidate() {
+        Arrays.fill(sentLengths, -1);
+        Arrays.fill(dirty, true);
+    }
+
+    /**
+     * Send every line that changed since the last flush
+     *
+     * @param out where to send the update messages
+     * @return the amount of lines sent
+     */
+    public int flush(PrintStream out) {
+        int count = 0;
+        for (int i = 0; i < rows.length; i++) {
+            if (!dirty[i]) continue;
+            dirty[i] = false;
+
+            int length = lengths[i];
+            if (length == sentLengths[i] && Arrays.equals(rows[i], 0, length, sent[i], 0, length)) {
+                continue;
+            }
+            System.arraycopy(rows[i], 0, sent[i], 0, length);
+            sentLengths[i] = length;
+
+            message.setLength(0);
+            message.append(UPDATE).append(i).append(SEPARATOR).append(rows[i], 0, length).append('\n');
+            out.append(message);
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,398 @@
+package external.webinterface;
+
+import external.opmode.FixedRateLoopScheduler;
+import external.opmode.HardwarelessAbstractOp;
+import fi.iki.elonen.NanoWSD;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.regex.Pattern;
+
+/**
+ * One opmode and everything around it: its gamepad, its console, and the browsers connected to it.
+ * <p>
+ * Every client that connects with the same session id sees the same output, and their keys all go
+ * to the same gamepad. A session doesn't get a thread of its own: its loop is scheduled by a
+ * {@link FixedRateLoopScheduler} on the web interface's shared loop executor, and its telemetry is
+ * sent from a separate executor, so a slow client never holds up a loop. It runs the opmode the
+ * same way the driver station would: init, init_loop until a client is connected, start, loop
+ * until the last client leaves, stop.
+ * </p>
+ * Once stopped, a session is over. The next client with the same id gets a new session.
+ */
+public class Session {
+
+    /**
+     * The id of the session clients join when they don't ask for one
+     */
+    public static final String DEFAULT_ID = "default";
+
+    private static final Pattern VALID_ID = Pattern.compile("[A-Za-z0-9_-]{1,32}");
+
+    public enum State {
+        /**
+         * Created, the opmode hasn't been initialized yet
+         */
+        NEW,
+        /**
+         * Initialized, waiting for a client before starting
+         */
+        INIT,
+        /**
+         * Started, looping until the last client leaves
+         */
+        RUNNING,
+        /**
+         * Stopped, no more loops will run
+         */
+        STOPPED,
+    }
+
+    private final String id;
+    private final long loopPeriodNanos;
+    private final VirtualGamepad gamepad = new VirtualGamepad();
+    private final List<NanoWSD.WebSocket> clients = new CopyOnWriteArrayList<>();
+    private final WebPrintStream out = new WebPrintStream(() -> clients);
+    private final HardwarelessAbstractOp opMode;
+
+    private final FixedRateLoopScheduler scheduler;
+
+    private volatile State state = State.NEW;
+    private volatile boolean refresh, stopRequested;
+    private volatile LongConsumer refreshListener;
+    private boolean joined, ending;
+    private final CountDownLatch ended = new CountDownLatch(1);
+    private Consumer<Session> onEnd;
+    private CompletableFuture<Void> loopTask;
+    private ScheduledFuture<?> sendTask;
+
+    // only touched by the loop task
+    private long loopsSinceStart;
+
+    // counters and rates, the rates are recalculated once a second by updateRates()
+    private final AtomicLong messages = new AtomicLong();
+    private volatile long loops;
+    private volatile double messagesPerSecond, loopsPerSecond;
+    private long lastRateTime = System.nanoTime();
+    private long lastRateMessages, lastRateLoops;
+
+    /**
+     * @param id              the session id clients join with
+     * @param loopPeriodNanos how often to run the opmode's loop
+     * @param factory         makes the opmode, it gets the opmode this session's gamepad and output
+     *                        unless the factory already set them
+     */
+    Session(String id, long loopPeriodNanos, Function<Session, ? extends HardwarelessAbstractOp> factory) {
+        this.id = id;
+        this.loopPeriodNanos = loopPeriodNanos;
+        // a late loop is skipped rather than run in a burst, and the executor's threads never spin
+        scheduler = new FixedRateLoopScheduler(1e9 / loopPeriodNanos, FixedRateLoopScheduler.OverrunPolicy.SKIP, 0);
+        opMode = factory.apply(this);
+        if (opMode.gamepad1 == null) opMode.gamepad1 = gamepad;
+        if (opMode.out == null) opMode.out = out;
+    }
+
+    /**
+     * @param id a requested session id
+     * @return whether the id can be used, it is also used in file names so only letters, digits, - and _ are allowed
+     */
+    public static boolean isValidId(String id) {
+        return id != null && VALID_ID.matcher(id).matches();
+    }
+
+    /**
+     * Start running the opmode and sending its output
+     *
+     * @param loopExecutor the executor that runs the loops of all sessions
+     * @param ioExecutor   the executor that sends the telemetry of all sessions, sending can block on a slow client
+     * @param onEnd        called from the loop executor once the opmode has stopped
+     */
+    synchronized void start(ScheduledExecutorService loopExecutor, ScheduledExecutorService ioExecutor,
+                            Consumer<Session> onEnd) {
+        this.onEnd = onEnd;
+        sendTask = ioExecutor.scheduleWithFixedDelay(out::send, 50, 250, TimeUnit.MILLISECONDS);
+        loopTask = scheduler.schedule(loopExecutor, () -> state != State.STOPPED, this::tick);
+        // tick() ends the session itself on exceptions, this catches errors and a loop that couldn't be scheduled
+        loopTask.whenComplete((result, failure) -> {
+            if (failure != null && !(failure instanceof CancellationException)) {
+                failure.printStackTrace();
+                end();
+            }
+        });
+    }
+
+    /**
+     * Run one step of the opmode, called every loop period by the scheduler
+     */
+    private void tick() {
+        try {
+            if (state != State.NEW && stopIfOver()) {
+                end();
+                return;
+            }
+            switch (state) {
+                case NEW:
+                    opMode.init();
+                    state = State.INIT;
+                    break;
+                case INIT:
+                    if (clients.isEmpty()) {
+                        opMode.init_loop();
+                    } else {
+                        opMode.start();
+                        state = State.RUNNING;
+                    }
+                    break;
+                case RUNNING:
+                    if (refresh) {
+                        refresh = false;
+                        LongConsumer listener = refreshListener;
+                        if (listener != null) listener.accept(loopsSinceStart);
+                        opMode.refresh();
+                    }
+                    opMode.loop();
+                    loopsSinceStart++;
+                    break;
+                case STOPPED:
+                    return;
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            end();
+            return;
+        }
+        loops++;
+    }
+
+    /**
+     * Stop accepting clients if the session was asked to stop, or if every client that joined has
+     * left, so a client that connects at the same moment gets a new session instead of joining one
+     * that is about to stop
+     *
+     * @return whether the session should stop
+     */
+    private synchronized boolean stopIfOver() {
+        if (!stopRequested && (!joined || !clients.isEmpty())) return false;
+        state = State.STOPPED;
+        return true;
+    }
+
+    /**
+     * Stop the opmode and let go of the session, only the first call does anything
+     */
+    private void end() {
+        synchronized (this) { // start() may still be assigning the tasks when the first tick fails
+            if (ending) return;
+            ending = true;
+            state = State.STOPPED;
+            loopTask.cancel(false);
+            sendTask.cancel(false);
+        }
+        try {
+            opMode.stop();
+        } catch (RuntimeException | Error e) {
+            e.printStackTrace();
+        }
+        out.flush();
+        ended.countDown();
+        onEnd.accept(this);
+    }
+
+    /**
+     * Add a client that just connected
+     *
+     * @param client the client's socket
+     * @return false if the session has already stopped, the client has to join a new one
+     */
+    synchronized boolean join(NanoWSD.WebSocket client) {
+        if (state == State.STOPPED) return false;
+        clients.add(client);
+        joined = true;
+        refresh = true; // the new client has to see the whole screen, not just what changes from now on
+        return true;
+    }
+
+    /**
+     * Remove a client that disconnected
+     *
+     * @param client the client's socket
+     */
+    void leave(NanoWSD.WebSocket client) {
+        clients.remove(client);
+    }
+
+    /**
+     * Handle a message from one of the clients
+     *
+     * @param payload the text of the message, a 4 letter command and its argument
+     */
+    void onMessage(String payload) {
+        messages.incrementAndGet();
+        if (payload.length() < 4) return;
+        String command = payload.substring(0, 4);
+        String arg = payload.substring(4);
+
+        if (command.equals("DOWN")) { // key down
+            gamepad.keyHandler(arg.toLowerCase(), true);
+        } else if (command.equals("KYUP")) { // key up
+            gamepad.keyHandler(arg.toLowerCase(), false);
+        } else if (command.equals("RFSH")) { // the client lost frames, send it the whole screen again
+            refresh = true;
+        }
+    }
+
+    /**
+     * Recalculate the message and loop rates, called once a second by the web interface
+     */
+    synchronized void updateRates() {
+        long now = System.nanoTime();
+        long elapsed = now - lastRateTime;
+        if (elapsed <= 0) return;
+        long m = messages.get();
+        long l = loops;
+        messagesPerSecond = (m - lastRateMessages) * 1e9 / elapsed;
+        loopsPerSecond = (l - lastRateLoops) * 1e9 / elapsed;
+        lastRateTime = now;
+        lastRateMessages = m;
+        lastRateLoops = l;
+    }
+
+    /**
+     * Get told whenever the opmode redraws its whole screen for a client, e.g. to record it
+     *
+     * @param listener called from the loop with the index of the loop the redraw ran right before,
+     *                 counting from 0 at the first loop after start. Null to stop listening
+     */
+    public void setRefreshListener(LongConsumer listener) {
+        refreshListener = listener;
+    }
+
+    /**
+     * Stop the opmode even though clients are still connected. It stops on its next loop, use
+     * {@link #awaitEnd()} to wait for it
+     */
+    void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Block until the opmode has stopped
+     */
+    public void awaitEnd() throws InterruptedException {
+        ended.await();
+    }
+
+    /**
+     * Block until the opmode has stopped, or until the timeout runs out
+     *
+     * @return whether the opmode has stopped
+     */
+    public boolean awaitEnd(long timeout, TimeUnit unit) throws InterruptedException {
+        return ended.await(timeout, unit);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getLoopPeriodNanos() {
+        return loopPeriodNanos;
+    }
+
+    /**
+     * @return the gamepad controlled by the keyboards of every client
+     */
+    public VirtualGamepad getGamepad() {
+        return gamepad;
+    }
+
+    /**
+     * @return the stream that prints to the console of every client
+     */
+    public PrintStream getOut() {
+        return out;
+    }
+
+    /**
+     * @return the transport behind {@link #getOut()}, for its throughput and drop counters
+     */
+    public TelemetryTransport getTelemetry() {
+        return out.transport;
+    }
+
+    public HardwarelessAbstractOp getOpMode() {
+        return opMode;
+    }
+
+    /**
+     * @return the sockets of the clients currently connected
+     */
+    List<NanoWSD.WebSocket> getClients() {
+        return clients;
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    /**
+     * @return the total amount of messages received from all clients
+     */
+    public long getMessages() {
+        return messages.get();
+    }
+
+    /**
+     * @return how many times the session's loop has run, counting init and init_loop
+     */
+    public long getLoops() {
+        return loops;
+    }
+
+    /**
+     * @return messages received per second, measured over the last second
+     */
+    public double getMessagesPerSecond() {
+        return messagesPerSecond;
+    }
+
+    /**
+     * @return loops run per second, measured over the last second
+     */
+    public double getLoopsPerSecond() {
+        return loopsPerSecond;
+    }
+
+    /**
+     * Print the statistics of the session and its opmode
+     *
+     * @param out where to print them
+     */
+    public void printStats(PrintStream out) {
+        out.println(this);
+        opMode.printStats(out);
+        scheduler.print(out);
+        out.println("telemetry: " + getTelemetry());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Session %s (%s): %d clients, %.1f messages/s, %.1f loops/s, %d loops",
+                id, state, getClientCount(), getMessagesPerSecond(), getLoopsPerSecond(), getLoops());
+    }
+}
@@ -0,0 +1,311 @@
+package external.webinterface;
+
+import external.util.InputExtractor;
+import fi.iki.elonen.NanoWSD;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+
+/**
+ * An OutputStream that batches everything written to it into WebSocket frames.
+ * <p>
+ * Writes only copy into a reusable buffer, so they are cheap enough to do from the opmode loop.
+ * The buffer is sealed into a frame when it fills up or when {@link #flush()} is called, and
+ * sealed frames wait in a bounded queue until {@link #drain()} sends them to every connected
+ * client. If the clients are slow or none are connected yet, the queue fills up and the oldest
+ * frames are dropped (and counted).
+ * </p>
+ * With {@link Framing#BINARY} every frame starts with a 4 byte big-endian sequence number, so the
+ * client can tell when frames were dropped.
+ */
+public class TelemetryTransport extends OutputStream {
+
+    public enum Framing {
+        /**
+         * Every frame is sent as a text frame containing the written characters, decoded with the
+         * transport's charset. A character split across two frames is sent with the second one.
+         */
+        TEXT,
+        /**
+         * Every frame is sent as a binary frame: a 4 byte sequence number, then the written bytes
+         */
+        BINARY,
+    }
+
+    /**
+     * The amount of bytes at the start of a binary frame used for the sequence number
+     */
+    public static final int HEADER_SIZE = 4;
+
+    private final InputExtractor<? extends Iterable<? extends NanoWSD.WebSocket>> clients;
+    private final Framing framing;
+    private final CharsetDecoder decoder;
+    private final int maxPendingFrames;
+
+    private final byte[] buffer;
+    private int count;
+    private int sequence;
+
+    private final ArrayDeque<byte[]> pending;
+
+    // the start of a character that didn't fit in the last text frame, only touched by decode()
+    private byte[] undecoded = new byte[0];
+
+    // counters, only ever touched while holding the lock on this
+    private long bytesSent, framesSent, bytesDropped, framesDropped;
+
+    // rates, recalculated once a second by drain()
+    private volatile double bytesPerSecond, framesPerSecond;
+    private long lastRateTime = System.nanoTime();
+    private long lastRateBytes, lastRateFrames;
+
+    /**
+     * @param clients          where to get the currently connected sockets from (may give null)
+     * @param framing          how frames are encoded
+     * @param charset          the charset of the bytes written, used to decode {@link Framing#TEXT} frames
+     * @param frameSize        the maximum amount of payload bytes in one frame
+     * @param maxPendingFrames how many frames to hold for a slow or missing client before dropping the oldest
+     */
+    public TelemetryTransport(InputExtractor<? extends Iterable<? extends NanoWSD.WebSocket>> clients, Framing framing,
+                              Charset charset, int frameSize, int maxPendingFrames) {
+        if (frameSize <= 0 || maxPendingFrames <= 0) {
+            throw new IllegalArgumentException("frameSize and maxPendingFrames must be positive");
+        }
+        this.clients = clients;
+        this.framing = framing;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.maxPendingFrames = maxPendingFrames;
+        this.buffer = new byte[frameSize];
+        this.pending = new ArrayDeque<>(maxPendingFrames);
+    }
+
+    /**
+     * Creates a transport for bytes written in UTF-8
+     *
+     * @param clients          where to get the currently connected sockets from (may give null)
+     * @param framing          how frames are encoded
+     * @param frameSize        the maximum amount of payload bytes in one frame
+     * @param maxPendingFrames how many frames to hold for a slow or missing client before dropping the oldest
+     */
+    public TelemetryTransport(InputExtractor<? extends Iterable<? extends NanoWSD.WebSocket>> clients, Framing framing,
+                              int frameSize, int maxPendingFrames) {
+        this(clients, framing, StandardCharsets.UTF_8, frameSize, maxPendingFrames);
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        if (count == buffer.length) {
+            seal();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        if ((off | len) < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (len > 0) {
+            if (count == buffer.length) {
+                seal();
+            }
+            int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Seal whatever has been written so far into a frame. This does not touch the network, call
+     * {@link #drain()} to actually send the frames.
+     */
+    @Override
+    public synchronized void flush() {
+        if (count > 0) {
+            seal();
+        }
+    }
+
+    /**
+     * Move the contents of the buffer into the pending queue, dropping the oldest frame if it is full
+     */
+    private void seal() {
+        byte[] frame;
+        if (framing == Framing.BINARY) {
+            int seq = sequence++;
+            frame = new byte[HEADER_SIZE + count];
+            frame[0] = (byte) (seq >>> 24);
+            frame[1] = (byte) (seq >>> 16);
+            frame[2] = (byte) (seq >>> 8);
+            frame[3] = (byte) seq;
+            System.arraycopy(buffer, 0, frame, HEADER_SIZE, count);
+        } else {
+            frame = new byte[count];
+            System.arraycopy(buffer, 0, frame, 0, count);
+        }
+        count = 0;
+
+        if (pending.size() == maxPendingFrames) {
+            dropped(pending.poll());
+        }
+        pending.add(frame);
+    }
+
+    private void dropped(byte[] frame) {
+        framesDropped++;
+        bytesDropped += payloadLength(frame);
+    }
+
+    private int payloadLength(byte[] frame) {
+        return framing == Framing.BINARY ? frame.length - HEADER_SIZE : frame.length;
+    }
+
+    /**
+     * Send every pending frame to every open client. If there is no open client, the frames are
+     * kept (up to the pending limit) until one connects. A frame counts as sent once it reached at
+     * least one client.
+     * <p>
+     * This blocks on the network, so it should be called from a background thread, not the opmode loop.
+     * </p>
+     */
+    public void drain() {
+        Iterable<? extends NanoWSD.WebSocket> sockets = clients.getValue();
+        if (sockets != null && anyOpen(sockets)) {
+            byte[] frame;
+            while ((frame = poll()) != null) {
+                String text = framing == Framing.TEXT ? decode(frame) : null;
+                boolean delivered = false;
+                for (NanoWSD.WebSocket ws : sockets) {
+                    if (!ws.isOpen()) continue;
+                    try {
+                        if (text == null) {
+                            ws.send(frame);
+                        } else {
+                            ws.send(text);
+                        }
+                        delivered = true;
+                    } catch (IOException e) {
+                        // that client is going away, the others still get the frame
+                    }
+                }
+                synchronized (this) {
+                    if (delivered) {
+                        framesSent++;
+                        bytesSent += payloadLength(frame);
+                    } else {
+                        dropped(frame);
+                    }
+                }
+                if (!delivered) break;
+            }
+        }
+        updateRates();
+    }
+
+    /**
+     * Decode a text frame, holding back a character that continues in the next frame
+     */
+    private synchronized String decode(byte[] frame) {
+        ByteBuffer in = ByteBuffer.allocate(undecoded.length + frame.length);
+        in.put(undecoded).put(frame).flip();
+        CharBuffer out = CharBuffer.allocate((int) Math.ceil(in.remaining() * (double) decoder.maxCharsPerByte()));
+        decoder.decode(in, out, false);
+        undecoded = new byte[in.remaining()];
+        in.get(undecoded);
+        return out.flip().toString();
+    }
+
+    private static boolean anyOpen(Iterable<? extends NanoWSD.WebSocket> sockets) {
+        for (NanoWSD.WebSocket ws : sockets) {
+            if (ws.isOpen()) return true;
+        }
+        return false;
+    }
+
+    private synchronized byte[] poll() {
+        return pending.poll();
+    }
+
+    private synchronized void updateRates() {
+        long now = System.nanoTime();
+        long elapsed = now - lastRateTime;
+        if (elapsed >= 1_000_000_000L) {
+            bytesPerSecond = (bytesSent - lastRateBytes) * 1e9 / elapsed;
+            framesPerSecond = (framesSent - lastRateFrames) * 1e9 / elapsed;
+            lastRateTime = now;
+            lastRateBytes = bytesSent;
+            lastRateFrames = framesSent;
+        }
+    }
+
+    /**
+     * @return the total amount of payload bytes sent to a client
+     */
+    public synchronized long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * @return the total amount of frames sent to a client
+     */
+    public synchronized long getFramesSent() {
+        return framesSent;
+    }
+
+    /**
+     * @return the total amount of payload bytes that were dropped before reaching a client
+     */
+    public synchronized long getBytesDropped() {
+        return bytesDropped;
+    }
+
+    /**
+     * @return the total amount of frames that were dropped before reaching a client
+     */
+    public synchronized long getFramesDropped() {
+        return framesDropped;
+    }
+
+    /**
+     * @return the amount of frames waiting to be sent
+     */
+    public synchronized int getPendingFrames() {
+        return pending.size();
+    }
+
+    /**
+     * @return payload bytes sent per second, measured over the last second
+     */
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * @return frames sent per second, measured over the last second
+     */
+    public double getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "%.0f B/s, %.1f frames/s, sent %d B in %d frames, dropped %d B in %d frames, %d pending",
+                getBytesPerSecond(), getFramesPerSecond(),
+                getBytesSent(), getFramesSent(),
+                getBytesDropped(), getFramesDropped(),
+                getPendingFrames()
+        );
+    }
+}
@@ -1,56 +1,156 @@
 package external.webinterface;
 
+import external.util.Clock;
+
+/**
+ * A gamepad controlled by the keyboard in the web interface.
+ * <p>
+ * The state of every button is packed into a single bitmask that is published atomically, so a
+ * reader always sees one consistent snapshot. Every change is also put in a
+ * {@link GamepadEventQueue} with a timestamp, so that taps shorter than a loop are not lost.
+ * </p>
+ */
 public class VirtualGamepad {
 
-    public boolean a, b, x, y, left_bumper, right_bumper,
-            dpad_up, dpad_down, dpad_left, dpad_right,
-            left_stick_button, right_stick_button, back, start;
+    public enum Button {
+        A, B, X, Y, LEFT_BUMPER, RIGHT_BUMPER,
+        DPAD_UP, DPAD_DOWN, DPAD_LEFT, DPAD_RIGHT,
+        LEFT_STICK_BUTTON, RIGHT_STICK_BUTTON, BACK, START,
+        ;
+
+        /**
+         * This button's bit in {@link VirtualGamepad#getButtons()}
+         */
+        public final int mask = 1 << ordinal();
+    }
+
+    /**
+     * Gets told about every button change when the gamepad's consumer takes it off the event queue
+     */
+    public interface UpdateListener {
+        /**
+         * @param update the consumer's update that took the event, counting from 0 (for a
+         *               GamepadManager, the opmode loop the event counts for)
+         * @param button the button that changed
+         * @param down   whether it was pressed (true) or released (false)
+         */
+        void onEvent(long update, Button button, boolean down);
+    }
+
+    private final Clock clock;
+    private volatile int buttons;
+    private final GamepadEventQueue events = new GamepadEventQueue(256);
+    private volatile UpdateListener listener;
+
+    /**
+     * @param clock where event timestamps come from
+     */
+    public VirtualGamepad(Clock clock) {
+        this.clock = clock;
+    }
+
+    public VirtualGamepad() {
+        this(Clock.SYSTEM);
+    }
+
+    /**
+     * @return the clock event timestamps come from
+     */
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Get told about every button change as the consumer takes it, on the consumer's thread (e.g.
+     * to record a session loop by loop)
+     *
+     * @param listener the listener, or null to remove it
+     */
+    public void setListener(UpdateListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return the listener the consumer has to tell about the events it takes, or null if there is none
+     */
+    public UpdateListener getListener() {
+        return listener;
+    }
+
+    /**
+     * @return the state of every button, with the bits given by {@link Button#mask} set when pressed
+     */
+    public int getButtons() {
+        return buttons;
+    }
+
+    /**
+     * @return whether the given button is pressed right now
+     */
+    public boolean isPressed(Button button) {
+        return (buttons & button.mask) != 0;
+    }
+
+    /**
+     * @return the queue of button edges, meant to be drained by one consumer (usually a GamepadManager)
+     */
+    public GamepadEventQueue getEvents() {
+        return events;
+    }
+
+    /**
+     * Press or release a button. Synchronized so the event queue only ever sees one producer at a time.
+     *
+     * @param button the button to change
+     * @param down   whether it is now pressed
+     */
+    public synchronized void setButton(Button button, boolean down) {
+        int previous = buttons;
+        int next = down ? previous | button.mask : previous & ~button.mask;
+        if (next != previous) {
+            buttons = next;
+            events.offer(clock.nanoTime(), button, down);
+        }
+    }
 
     public void keyHandler(String ev, boolean isDownEvent) {
-        // TODO: Replace these all with cells
-        // ugly switch statement
-        // see rust Entry for salvation
-        // though javalang devs are so obstinate
+        Button button = buttonForKey(ev);
+        if (button != null) {
+            setButton(button, isDownEvent);
+        } else {
+            System.out.printf("pressed key: %s%n", ev);
+        }
+    }
+
+    private static Button buttonForKey(String ev) {
         switch (ev) {
             case "arrowup":
-                dpad_up = isDownEvent;
-                break;
+                return Button.DPAD_UP;
             case "arrowdown":
-                dpad_down = isDownEvent;
-                break;
+                return Button.DPAD_DOWN;
             case "arrowleft":
-                dpad_left = isDownEvent;
-                break;
+                return Button.DPAD_LEFT;
             case "arrowright":
-                dpad_right = isDownEvent;
-                break;
+                return Button.DPAD_RIGHT;
             case "w":
-                a = isDownEvent;
-                break;
+                return Button.A;
             case "d":
-                b = isDownEvent;
-                break;
+                return Button.B;
             case "s":
-                y = isDownEvent;
-                break;
+                return Button.Y;
             case "a":
-                x = isDownEvent;
-                break;
+                return Button.X;
             // now I must wallow in the fact that javafx doesn't let you tell between l/r shift or l/r ctrl
             case "z":
-                left_bumper = isDownEvent;
-                break;
+                return Button.LEFT_BUMPER;
             case "/":
-                right_bumper = isDownEvent;
-                break;
+                return Button.RIGHT_BUMPER;
             case "b":
-                start = isDownEvent;
-                break;
+                return Button.START;
             case "n":
-                back = isDownEvent;
-                break;
+                return Button.BACK;
             default:
-                System.out.printf("pressed key: %s%n", ev);
+                return null;
         }
     }
 
@@ -1,125 +1,298 @@
 package external.webinterface;
 
-import external.util.Cell;
-import external.util.InputExtractor;
+import external.opmode.HardwarelessAbstractOp;
 import fi.iki.elonen.NanoHTTPD;
 import fi.iki.elonen.NanoWSD;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
 
 import java.io.*;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
+/**
+ * Serves the browser interface and hosts any number of {@link Session}s, each with its own opmode.
+ * <p>
+ * A client picks its session with the {@code session} query parameter of the page, e.g.
+ * {@code http://localhost:28080/?session=alice}, and without one joins {@link Session#DEFAULT_ID}.
+ * Sessions are created when their first client connects and end when their last client leaves.
+ * </p>
+ * All sessions share one small executor for their loops and another one for their telemetry and
+ * the keep-alive pings, so the amount of threads doesn't grow with the amount of sessions, and a
+ * client that stops reading only ever blocks a network thread, never a loop.
+ * {@code /sessions} lists every session with its metrics as JSON.
+ */
 public class WebInterface extends NanoHTTPD {
 
-    private static final File webpage = new File("src/main/resources/index.html");
-    private static WebInterface self;
+    /**
+     * Where the assets live in the source tree, watched for changes when the
+     * {@code webinterface.dev} system property is true
+     */
+    private static final Path ASSET_SOURCES = Paths.get("src/main/resources/web");
 
-    public static PrintStream out;
-    public static VirtualGamepad vgp;
+    private final AssetStore assets;
+    private final Socket socket;
+    private final long loopPeriodNanos;
+    private final Function<Session, ? extends HardwarelessAbstractOp> factory;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor loopExecutor, ioExecutor;
 
-    public WebInterface(int port, Cell<Boolean> connection) throws IOException {
+    /**
+     * @param port            the port to serve the page on
+     * @param socketPort      the port the page's WebSocket connects to
+     * @param loopPeriodNanos how often to run each session's opmode loop
+     * @param threads         how many threads all the sessions share for their loops, and again for sending
+     * @param factory         makes a new opmode for every session
+     */
+    public WebInterface(int port, int socketPort, long loopPeriodNanos, int threads,
+                        Function<Session, ? extends HardwarelessAbstractOp> factory) throws IOException {
         super(port);
+        this.loopPeriodNanos = loopPeriodNanos;
+        this.factory = factory;
 
-        vgp = new VirtualGamepad();
-        Socket socket = new Socket(28020, connection);
-        out = new WebPrintStream(socket.active);
-
-        if (self != null) {
-            throw new ExceptionInInitializerError("WebInterface is a singleton, not allowed");
-        } else {
-            self = this;
+        assets = new AssetStore(WebInterface.class.getClassLoader());
+        if (Boolean.getBoolean("webinterface.dev") && Files.isDirectory(ASSET_SOURCES)) {
+            assets.watch(ASSET_SOURCES);
         }
 
+        loopExecutor = newExecutor(threads, "session-loop-");
+        ioExecutor = newExecutor(threads, "session-io-");
+        ioExecutor.scheduleWithFixedDelay(this::ping, 1, 2, TimeUnit.SECONDS);
+        ioExecutor.scheduleAtFixedRate(this::updateRates, 1, 1, TimeUnit.SECONDS);
+
+        socket = new Socket(socketPort, this);
         socket.start();
         start(NanoHTTPD.SOCKET_READ_TIMEOUT, false);
 
     }
 
+    private static ScheduledThreadPoolExecutor newExecutor(int threads, String name) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(threads, r -> {
+            Thread t = new Thread(r, name + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * Runs the opmodes at 100Hz on the default socket port, sharing one thread per processor
+     *
+     * @param port    the port to serve the page on
+     * @param factory makes a new opmode for every session
+     */
+    public WebInterface(int port, Function<Session, ? extends HardwarelessAbstractOp> factory) throws IOException {
+        this(port, 28020, 10_000_000L, Runtime.getRuntime().availableProcessors(), factory);
+    }
+
+    /**
+     * Add a client to the session with the given id, starting a new session if there is none or
+     * the last one has stopped
+     *
+     * @param id     the session id the client asked for
+     * @param client the client's socket
+     * @return the session the client joined
+     */
+    Session join(String id, NanoWSD.WebSocket client) {
+        while (true) {
+            Session session = sessions.compute(id, (key, existing) ->
+                    existing == null || existing.getState() == Session.State.STOPPED
+                            ? newSession(key) : existing);
+            if (session.join(client)) {
+                return session;
+            }
+        }
+    }
+
+    private Session newSession(String id) {
+        Session session = new Session(id, loopPeriodNanos, factory);
+        session.start(loopExecutor, ioExecutor, this::ended);
+        return session;
+    }
+
+    private void ended(Session session) {
+        sessions.remove(session.getId(), session);
+        System.out.println(session);
+    }
+
+    /**
+     * Keep every connection alive, and notice the ones that died without closing
+     */
+    private void ping() {
+        byte[] payload = "iusearchbtw".getBytes();
+        for (Session session : sessions.values()) {
+            for (NanoWSD.WebSocket client : session.getClients()) {
+                try {
+                    client.ping(payload);
+                } catch (IOException e) {
+                    // the socket closes itself, which removes it from the session
+                }
+            }
+        }
+    }
+
+    private void updateRates() {
+        for (Session session : sessions.values()) {
+            session.updateRates();
+        }
+    }
+
+    /**
+     * @param id a session id
+     * @return the session currently running with that id, or null if there is none
+     */
+    public Session getSession(String id) {
+        return sessions.get(id);
+    }
+
+    /**
+     * @return every session currently running
+     */
+    public Collection<Session> getSessions() {
+        return sessions.values();
+    }
+
+    /**
+     * Stop serving, and stop every session that is still running so its opmode gets to run
+     * {@code stop()} before the executors shut down
+     */
     @Override
-    public Response serve(IHTTPSession session) {
+    public void stop() {
+        socket.stop();
+        super.stop();
+        List<Session> running = new ArrayList<>(sessions.values());
+        for (Session session : running) {
+            session.stop();
+        }
         try {
-            return newChunkedResponse(
-                    Response.Status.OK,
-                    "text/html",
-                    new FileInputStream(webpage)
-            );
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+            for (Session session : running) {
+                if (!session.awaitEnd(5, TimeUnit.SECONDS)) {
+                    System.err.println("gave up waiting for " + session);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        loopExecutor.shutdownNow();
+        ioExecutor.shutdownNow();
+    }
+
+    @Override
+    public Response serve(IHTTPSession session) {
+        if (session.getUri().equals("/sessions")) {
+            return newFixedLengthResponse(Response.Status.OK, "application/json", sessionsJson());
+        }
+        AssetStore.Asset asset = assets.get(session.getUri());
+        if (asset == null) {
             return newFixedLengthResponse(
-                    Response.Status.INTERNAL_ERROR,
-                    "text/text",
-                    "Couldn't find webpage"
+                    Response.Status.NOT_FOUND,
+                    MIME_PLAINTEXT,
+                    "Couldn't find " + session.getUri()
             );
         }
+        return AssetStore.respond(asset, session.getHeaders());
+    }
+
+    @SuppressWarnings("unchecked")
+    private String sessionsJson() {
+        JSONArray array = new JSONArray();
+        for (Session session : sessions.values()) {
+            JSONObject o = new JSONObject();
+            o.put("id", session.getId());
+            o.put("state", session.getState().name());
+            o.put("clients", session.getClientCount());
+            o.put("messages", session.getMessages());
+            o.put("messagesPerSecond", session.getMessagesPerSecond());
+            o.put("loops", session.getLoops());
+            o.put("loopsPerSecond", session.getLoopsPerSecond());
+            o.put("telemetryBytesPerSecond", session.getTelemetry().getBytesPerSecond());
+            o.put("telemetryFramesDropped", session.getTelemetry().getFramesDropped());
+            array.add(o);
+        }
+        return array.toJSONString();
+    }
+
+    @Override
+    protected boolean useGzipWhenAccepted(Response r) {
+        return false; // assets are gzipped ahead of time
     }
 }
 
 class Socket extends NanoWSD {
 
-    WebSocket a;
-    final InputExtractor<WebSocket> active = () -> a;
-    private final Cell<Boolean> connection;
-    private TimerTask ping;
+    private final WebInterface web;
 
-    public Socket(int port, Cell<Boolean> connection) {
+    public Socket(int port, WebInterface web) {
         super(port);
-        this.connection = connection;
+        this.web = web;
+    }
+
+    /**
+     * @return the session id the handshake asks for, the default one if it doesn't ask, or null if it is invalid
+     */
+    private static String sessionId(IHTTPSession handshake) {
+        List<String> values = handshake.getParameters().get("session");
+        String id = values == null || values.isEmpty() ? Session.DEFAULT_ID : values.get(0);
+        return Session.isValidId(id) ? id : null;
+    }
+
+    @Override
+    public Response serve(IHTTPSession handshake) {
+        if (sessionId(handshake) == null) {
+            return newFixedLengthResponse(Response.Status.BAD_REQUEST, MIME_PLAINTEXT, "Invalid session id");
+        }
+        return super.serve(handshake);
     }
 
     @Override
     protected WebSocket openWebSocket(IHTTPSession handshake) {
-        a = new SocketImpl(handshake, connection);
-        return a;
+        return new SocketImpl(handshake, web, sessionId(handshake));
     }
 
     static class SocketImpl extends WebSocket {
 
-        private final Cell<Boolean> connection;
-        private final TimerTask ping = new TimerTask() {
-            @Override
-            public void run() {
-                try {
-                    ping("iusearchbtw".getBytes());
-                } catch (IOException e) {
-                    ping.cancel();
-                }
-            }
-        };
+        private final WebInterface web;
+        private final String id;
+        private volatile Session session;
 
-        public SocketImpl(IHTTPSession handshakeRequest, Cell<Boolean> connection) {
+        public SocketImpl(IHTTPSession handshakeRequest, WebInterface web, String id) {
             super(handshakeRequest);
-            this.connection = connection;
+            this.web = web;
+            this.id = id;
         }
 
         @Override
         protected void onOpen() {
-            connection.set(true);
-            new Timer().schedule(ping, 1000, 2000);
+            session = web.join(id, this);
         }
 
         @Override
         protected void onClose(WebSocketFrame.CloseCode code, String reason, boolean initiatedByRemote) {
-            connection.set(false);
+            if (session != null) {
+                session.leave(this);
+            }
         }
 
         @Override
         protected void onMessage(WebSocketFrame message) {
-            String payload = message.getTextPayload();
-            String command = payload.substring(0, 4);
-            String arg = payload.substring(4);
-
-            if (command.equals("DOWN")) { // key down
-                WebInterface.vgp.keyHandler(arg.toLowerCase(), true);
-            } else if (command.equals("KYUP")) { // key up
-                WebInterface.vgp.keyHandler(arg.toLowerCase(), false);
-            }
+            session.onMessage(message.getTextPayload());
         }
 
         @Override
         protected void onPong(WebSocketFrame pong) {
 
-            System.out.println("Received ping from client");
-
         }
 
         @Override
@@ -128,29 +301,3 @@ class Socket extends NanoWSD {
         }
     }
 }
-
-class WebPrintStream extends PrintStream {
-
-    InputExtractor<NanoWSD.WebSocket> socket;
-
-    public WebPrintStream(InputExtractor<NanoWSD.WebSocket> socket) {
-        super(new BufferedOutputStream(new OutputStream() {
-            @Override
-            public void write(int b) throws IOException {
-                try {
-                    socket.getValue().send(String.valueOf((char) (b & 0xFF))); //TODO: Find a way to do this without creating new string every data
-                } catch (NullPointerException e) {
-                    System.out.println("The socket has not been connected yet. Given data has been dropped.");
-                }
-            }
-        }));
-
-        this.socket = socket;
-        new Timer().schedule(new TimerTask() {
-            @Override
-            public void run() {
-                flush();
-            }
-        }, 50, 250);
-    }
-}
\ No newline at end of file
@@ -0,0 +1,33 @@
+package external.webinterface;
+
+import external.util.InputExtractor;
+import fi.iki.elonen.NanoWSD;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The console of a {@link Session}: prints into a {@link TelemetryTransport} that sends to every client of the session
+ */
+class WebPrintStream extends PrintStream {
+
+    final TelemetryTransport transport;
+
+    public WebPrintStream(InputExtractor<? extends Iterable<? extends NanoWSD.WebSocket>> clients) {
+        this(new TelemetryTransport(clients, TelemetryTransport.Framing.BINARY, StandardCharsets.UTF_8, 4096, 256));
+    }
+
+    private WebPrintStream(TelemetryTransport transport) {
+        super(transport, false, StandardCharsets.UTF_8); // what the TextDecoder in index.html expects
+        this.transport = transport;
+    }
+
+    /**
+     * Seal whatever was printed into a frame and send it to the clients, without holding the
+     * stream's lock while on the network. Called periodically by the session.
+     */
+    void send() {
+        flush();
+        transport.drain();
+    }
+}
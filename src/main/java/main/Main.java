@@ -2,27 +2,60 @@ package main;
 
 import examples.ExampleOptionsOp;
 import examples.GameChangersOptionOp;
-import external.util.Cell;
+import external.headless.SessionRecorder;
 import external.opmode.HardwarelessAbstractOp;
+import external.webinterface.Session;
 import external.webinterface.WebInterface;
-import fi.iki.elonen.NanoHTTPD;
 
 import java.awt.*;
+import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 public class Main {
 
-    static final HardwarelessAbstractOp opMode = new GameChangersOptionOp("options-test");
-    static volatile Cell<Boolean> connected = new Cell<>(false);
-    static Thread opThread;
+    static final CompletableFuture<Session> defaultSession = new CompletableFuture<>();
+    static SessionRecorder recorder;
 
-    public static void main(String[] args) throws InterruptedException {
+    /**
+     * Every session gets its own opmode, and its own options file so sessions don't overwrite each other
+     */
+    static HardwarelessAbstractOp createOpMode(Session session, File recordTo) {
+        if (!session.getId().equals(Session.DEFAULT_ID)) {
+            return new GameChangersOptionOp("options-test-" + session.getId());
+        }
+
+        GameChangersOptionOp opMode = new GameChangersOptionOp("options-test");
+        if (!defaultSession.isDone()) {
+            if (recordTo != null) {
+                recorder = new SessionRecorder(session.getGamepad(), session.getOut(), session.getLoopPeriodNanos(),
+                        opMode.getOptionValues());
+                opMode.out = recorder.getOut();
+                session.setRefreshListener(recorder::refreshed);
+            }
+            defaultSession.complete(session);
+        }
+        return opMode;
+    }
+
+    /**
+     * Other people can run their own opmode on the same server by opening
+     * {@code http://<host>:28080/?session=<name>}. The program ends when the first default session does.
+     *
+     * @param args {@code --record <file>} to save the default session for replaying with {@link Replay}
+     */
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
 
+        File recordTo = args.length == 2 && args[0].equals("--record") ? new File(args[1]) : null;
+
+        WebInterface webserver;
         try {
-            NanoHTTPD webserver = new WebInterface(28080, connected);
+            webserver = new WebInterface(28080, session -> createOpMode(session, recordTo));
         } catch (Exception e) {
             e.printStackTrace();
+            return;
         }
 
         try {
@@ -31,37 +64,21 @@ public class Main {
             System.out.println("Please open http://localhost:28080 in your browser");
         }
 
-        opThread = new Thread(() -> {
+        Session session = defaultSession.get();
+        session.awaitEnd(); // wait for run to completion
+        session.printStats(System.out);
 
-            opMode.gamepad1 = WebInterface.vgp;
-            opMode.init();
-            while (!connected.get()) {
-                // WARNING: This method is not guaranteed to loop to completion (in fact, it probably won't run at all)
-                opMode.init_loop();
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-            opMode.start();
-            while (connected.get()) {
-                opMode.loop();
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+        if (recorder != null) {
+            try {
+                recorder.finish().write(recordTo);
+                System.out.println("Recorded the session to " + recordTo);
+            } catch (IOException e) {
+                e.printStackTrace();
             }
-            opMode.stop();
-
-        });
-
-        opThread.start();
-
-        opThread.join(); // wait for run to completion
+        }
         System.out.println("OpMode completed successfully, have a nice day");
-        System.exit(0); // to join the webserver worker as well
+        webserver.stop();
+        System.exit(0); // to join the webserver workers as well
 
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,63 @@
+package main;
+
+import examples.GameChangersOptionOp;
+import external.headless.HeadlessRunner;
+import external.headless.SessionRecording;
+import external.util.BasicConverters;
+import external.util.OptionsFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replays sessions recorded with {@code Main --record <file>} without the browser, in parallel and
+ * faster than real time, and reports which ones no longer print what was recorded.
+ */
+public class Replay {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        if (args.length == 0) {
+            System.out.println("Usage: Replay <recording>...");
+            return;
+        }
+
+        List<SessionRecording> recordings = new ArrayList<>();
+        for (String arg : args) {
+            recordings.add(SessionRecording.read(new File(arg)));
+        }
+
+        // every replay needs its own options file, so the replays can't see each other's changes,
+        // holding the options the recorded session started from
+        File dir = new File("build/replay");
+        dir.mkdirs();
+        AtomicInteger count = new AtomicInteger();
+        HeadlessRunner runner = new HeadlessRunner(recording -> {
+            String path = new File(dir, "options-" + count.getAndIncrement()).getPath();
+            try {
+                new OptionsFile(BasicConverters.getInstance(), recording.getOptions(), new File(path + "-gamechangers"));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return new GameChangersOptionOp(path);
+        });
+
+        long start = System.nanoTime();
+        List<HeadlessRunner.Result> results = runner.replayAll(recordings);
+        long elapsed = System.nanoTime() - start;
+
+        int failed = 0;
+        for (int i = 0; i < results.size(); i++) {
+            HeadlessRunner.Result result = results.get(i);
+            System.out.printf("%s: %s%n", args[i], result);
+            if (!result.matches()) failed++;
+        }
+        System.out.printf("%d of %d replays matched in %.1fms%n", results.size() - failed, results.size(), elapsed / 1e6);
+
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
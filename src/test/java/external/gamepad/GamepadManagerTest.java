@@ -0,0 +1,70 @@
+package external.gamepad;
+
+import external.webinterface.VirtualGamepad;
+import external.webinterface.VirtualGamepad.Button;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GamepadManagerTest {
+
+    @Test
+    void tapBetweenUpdatesIsNotLost() {
+
+        VirtualGamepad gamepad = new VirtualGamepad();
+        GamepadManager manager = new GamepadManager(gamepad);
+        manager.update();
+
+        gamepad.setButton(Button.A, true);
+        gamepad.setButton(Button.A, false);
+        manager.update();
+
+        assert (manager.a.justPressed());
+        assert (manager.a.justReleased());
+        assert (!manager.a.isPressed());
+        assert (manager.justTriggered());
+        assertEquals(2, manager.getInputLatency().getCount());
+
+        manager.update();
+        assert (!manager.a.justPressed());
+        assert (!manager.justTriggered());
+
+    }
+
+    @Test
+    void holdAcrossUpdates() {
+
+        VirtualGamepad gamepad = new VirtualGamepad();
+        GamepadManager manager = new GamepadManager(gamepad);
+        manager.update();
+
+        gamepad.setButton(Button.DPAD_UP, true);
+        manager.update();
+        assert (manager.dpad_up.justPressed());
+        assert (manager.dpad_up.isPressed());
+
+        manager.update();
+        assert (!manager.dpad_up.justPressed());
+        assert (manager.dpad_up.isPressed());
+
+        gamepad.setButton(Button.DPAD_UP, false);
+        manager.update();
+        assert (manager.dpad_up.justReleased());
+        assert (!manager.dpad_up.isPressed());
+
+    }
+
+    @Test
+    void pressesBeforeTheManagerAreNotEdges() {
+
+        VirtualGamepad gamepad = new VirtualGamepad();
+        gamepad.setButton(Button.B, true);
+
+        GamepadManager manager = new GamepadManager(gamepad);
+        manager.update();
+        assert (manager.b.isPressed());
+        assert (!manager.b.justPressed());
+
+    }
+
+}
@@ -0,0 +1,142 @@
+package external.headless;
+
+import examples.GameChangersOptionOp;
+import external.util.BasicConverters;
+import external.util.OptionsFile;
+import external.util.VirtualClock;
+import external.webinterface.VirtualGamepad;
+import external.webinterface.VirtualGamepad.Button;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HeadlessRunnerTest {
+
+    private static final long MS = 1_000_000L;
+
+    private final File dir = new File("build/tmp/headless-runner-test");
+    private final AtomicInteger count = new AtomicInteger();
+
+    private final HeadlessRunner runner = new HeadlessRunner(recording -> {
+        String path = newOptionsPath();
+        seed(path, recording.getOptions());
+        return new GameChangersOptionOp(path);
+    });
+
+    // scroll down and flip a couple of options
+    private final SessionRecording session = new SessionRecording(
+            10 * MS,
+            Collections.emptyMap(),
+            new long[]{10, 15, 30, 31, 50, 55, 70, 72},
+            new Button[]{
+                    Button.RIGHT_BUMPER, Button.RIGHT_BUMPER,
+                    Button.DPAD_DOWN, Button.DPAD_DOWN,
+                    Button.RIGHT_BUMPER, Button.RIGHT_BUMPER,
+                    Button.DPAD_DOWN, Button.DPAD_DOWN,
+            },
+            new boolean[]{true, false, true, false, true, false, true, false},
+            ""
+    );
+
+    @Test
+    void replayIsDeterministic() throws IOException, InterruptedException {
+
+        HeadlessRunner.Result first = runner.replay(session);
+        assert (!first.matches()); // nothing was recorded
+        assert (first.getOutput().contains("BLUE"));
+
+        SessionRecording recorded = session.withOutput(first.getOutput());
+        File file = new File(dir, "session.evrec");
+        recorded.write(file);
+        SessionRecording loaded = SessionRecording.read(file);
+        assertEquals(recorded, loaded);
+
+        List<HeadlessRunner.Result> results = runner.replayAll(Collections.nCopies(16, loaded), 4);
+        for (HeadlessRunner.Result result : results) {
+            assert (result.matches()) : result;
+        }
+
+    }
+
+    @Test
+    void reportsTheFirstDifferentLine() {
+
+        String expected = runner.replay(session).getOutput();
+        List<String> lines = new ArrayList<>(List.of(expected.split("\n", -1)));
+        lines.set(3, "something else");
+
+        HeadlessRunner.Result result = runner.replay(session.withOutput(String.join("\n", lines)));
+        assert (!result.matches());
+        assertEquals(3, result.getFirstDifferentLine());
+
+    }
+
+    @Test
+    void replaysWhatWasRecorded() throws IOException {
+
+        // a saved options file, and two taps that come in during the same loop
+        String path = newOptionsPath();
+        seed(path, Map.of("TEAM_COLOR", "BLUE"));
+        GameChangersOptionOp live = new GameChangersOptionOp(path);
+
+        VirtualGamepad gamepad = new VirtualGamepad(new VirtualClock());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SessionRecorder recorder = new SessionRecorder(gamepad, new PrintStream(bytes), 10 * MS, live.getOptionValues());
+        live.gamepad1 = gamepad;
+        live.out = recorder.getOut();
+
+        live.init();
+        live.start();
+        for (int loop = 0; loop < 20; loop++) {
+            if (loop == 5) {
+                gamepad.setButton(Button.RIGHT_BUMPER, true);
+                gamepad.setButton(Button.RIGHT_BUMPER, false);
+                gamepad.setButton(Button.DPAD_DOWN, true);
+            }
+            if (loop == 6) {
+                gamepad.setButton(Button.DPAD_DOWN, false);
+            }
+            live.loop();
+        }
+        live.stop();
+        SessionRecording recorded = recorder.finish();
+
+        assertEquals("BLUE", recorded.getOptions().get("TEAM_COLOR"));
+        assertEquals(4, recorded.getEventCount());
+        assertEquals(5, recorded.getLoop(0));
+        assertEquals(5, recorded.getLoop(2));
+        assertEquals(6, recorded.getLoop(3));
+
+        HeadlessRunner.Result result = runner.replay(recorded);
+        assert (result.matches()) : result;
+
+    }
+
+    private String newOptionsPath() {
+        dir.mkdirs();
+        return new File(dir, "options-" + count.getAndIncrement()).getPath();
+    }
+
+    /**
+     * Start the options file of a GameChangersOptionOp with the given path from the given values
+     */
+    private static void seed(String path, Map<String, String> options) {
+        try {
+            new OptionsFile(BasicConverters.getInstance(), options, new File(path + "-gamechangers"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
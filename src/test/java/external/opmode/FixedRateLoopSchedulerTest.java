@@ -0,0 +1,121 @@
+package external.opmode;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FixedRateLoopSchedulerTest {
+
+    /**
+     * Runs 5 iterations at 100Hz, the first of which takes 35ms
+     */
+    private static FixedRateLoopScheduler runWithSlowFirstIteration(FixedRateLoopScheduler.OverrunPolicy policy)
+            throws InterruptedException {
+        FixedRateLoopScheduler scheduler = new FixedRateLoopScheduler(100, policy, 100_000);
+        int[] count = {0};
+        scheduler.run(() -> count[0] < 5, () -> {
+            if (count[0]++ == 0) {
+                sleep(35);
+            }
+        });
+        assertEquals(5, count[0]);
+        return scheduler;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void runsAtTheTargetRate() throws InterruptedException {
+
+        FixedRateLoopScheduler scheduler = new FixedRateLoopScheduler(200);
+        assertEquals(5_000_000, scheduler.getPeriodNanos());
+
+        long start = System.nanoTime();
+        int[] count = {0};
+        scheduler.run(() -> count[0] < 20, () -> count[0]++);
+        long elapsed = System.nanoTime() - start;
+
+        // 20 iterations start at 0, 5, ..., 95ms and the loop ends at the 20th deadline
+        assertTrue(elapsed >= 95_000_000, "finished after " + elapsed + "ns");
+        assertEquals(20, scheduler.getIterations());
+        assertEquals(20, scheduler.getJitter().getCount());
+
+    }
+
+    @Test
+    void skipsMissedIterations() throws InterruptedException {
+
+        FixedRateLoopScheduler scheduler = runWithSlowFirstIteration(FixedRateLoopScheduler.OverrunPolicy.SKIP);
+
+        // the first iteration ended at least 25ms past the second deadline, so the 2nd, 3rd and 4th were left out
+        assertTrue(scheduler.getOverruns() >= 1);
+        assertTrue(scheduler.getSkipped() >= 3, "skipped " + scheduler.getSkipped());
+        assertTrue(scheduler.getOverrun().getMax() >= 25_000_000);
+        assertEquals(5, scheduler.getIterations());
+
+    }
+
+    @Test
+    void catchesUpOnMissedIterations() throws InterruptedException {
+
+        FixedRateLoopScheduler scheduler = runWithSlowFirstIteration(FixedRateLoopScheduler.OverrunPolicy.CATCH_UP);
+
+        // the missed iterations run late instead of not at all
+        assertTrue(scheduler.getOverruns() >= 1);
+        assertEquals(0, scheduler.getSkipped());
+        assertTrue(scheduler.getJitter().getMax() >= 15_000_000);
+        assertEquals(5, scheduler.getIterations());
+
+    }
+
+    @Test
+    void scheduledLoopSkipsMissedIterations() throws Exception {
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            FixedRateLoopScheduler scheduler = new FixedRateLoopScheduler(100);
+            int[] count = {0};
+            CompletableFuture<Void> done = scheduler.schedule(executor, () -> count[0] < 5, () -> {
+                if (count[0]++ == 0) {
+                    sleep(35);
+                }
+            });
+            done.get(5, TimeUnit.SECONDS);
+
+            assertEquals(5, count[0]);
+            assertEquals(5, scheduler.getIterations());
+            assertTrue(scheduler.getSkipped() >= 3, "skipped " + scheduler.getSkipped());
+
+            // a failing iteration ends the loop
+            CompletableFuture<Void> failed = scheduler.schedule(executor, () -> true, () -> {
+                throw new IllegalStateException();
+            });
+            assertThrows(Exception.class, () -> failed.get(5, TimeUnit.SECONDS));
+            assertTrue(failed.isCompletedExceptionally());
+        } finally {
+            executor.shutdownNow();
+        }
+
+    }
+
+    @Test
+    void rejectsInvalidRates() {
+
+        assertThrows(IllegalArgumentException.class, () -> new FixedRateLoopScheduler(0));
+        assertThrows(IllegalArgumentException.class, () -> new FixedRateLoopScheduler(-10));
+
+    }
+}
@@ -0,0 +1,59 @@
+package external.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryLoggerTest {
+
+    @Test
+    void roundTripsThroughCsv() throws IOException {
+
+        int[] counter = {0};
+        BinaryLogger logger = new BinaryLogger("binary-logger-test", ".evlog", Arrays.asList(
+                new Logger.LongColumn("count", () -> counter[0]),
+                new Logger.DoubleColumn("half", () -> counter[0] / 2.0),
+                new Logger.BooleanColumn("even", () -> counter[0] % 2 == 0),
+                new Logger.Column("text", () -> "100%")
+        ), 64, BinaryLogger.OverflowPolicy.BLOCK);
+
+        File dir = new File("build/tmp/binary-logger-test");
+        dir.mkdirs();
+        boolean started = logger.start(dir);
+        assertTrue(started);
+        for (counter[0] = 0; counter[0] < 1000; counter[0]++) {
+            logger.act();
+        }
+        logger.stop();
+        assertEquals(0, logger.getDroppedSamples());
+
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        File file = new File(dir, logger.getFileName());
+        try (InputStream in = new FileInputStream(file)) {
+            assertEquals(0, BinaryLogReader.toCsv(in, new PrintStream(csv)));
+        }
+        file.delete();
+
+        String[] lines = csv.toString().split("\n");
+        assertEquals(1001, lines.length);
+        assertEquals("time,count,half,even,text", lines[0]);
+        for (int i = 0; i < 1000; i++) {
+            String[] cells = lines[i + 1].split(",");
+            assertEquals(String.valueOf(i), cells[1]);
+            assertEquals(String.valueOf(i / 2.0), cells[2]);
+            assertEquals(String.valueOf(i % 2 == 0), cells[3]);
+            assertEquals("NaN", cells[4]);
+        }
+
+    }
+
+}
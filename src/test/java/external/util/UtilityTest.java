@@ -9,6 +9,8 @@ import java.io.IOException;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class UtilityTest {
 
@@ -41,6 +43,25 @@ class UtilityTest {
 
     }
 
+    @Test
+    void histogram() {
+
+        Histogram h = new Histogram("test");
+        for (long i = 1; i <= 1000; i++) {
+            h.record(i * 1000);
+        }
+
+        assertEquals(h.getCount(), 1000);
+        assertEquals(h.getMin(), 1000);
+        assertEquals(h.getMax(), 1_000_000);
+        assertEquals(h.getMean(), 500_500, 1e-9);
+        // buckets are accurate to about 3%
+        assertEquals(h.getValueAtPercentile(50), 500_000, 500_000 * 0.04);
+        assertEquals(h.getValueAtPercentile(99), 990_000, 990_000 * 0.04);
+        assertEquals(h.getValueAtPercentile(100), 1_000_000);
+
+    }
+
     @Test
     void optionsFile() throws IOException, ParseException {
 
@@ -60,4 +81,41 @@ class UtilityTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    void optionsFileWriteBehind() throws IOException, ParseException {
+
+        File physicalFile = new File("build/tmp/options-test-write-behind");
+        physicalFile.getParentFile().mkdirs();
+        physicalFile.delete();
+
+        OptionsFile f = new OptionsFile(BasicConverters.getInstance(), physicalFile);
+        f.set("saved", 1);
+        boolean written = f.writeToFile();
+        assertTrue(written);
+
+        // drop goes back to what was last saved
+        f.set("saved", 2);
+        f.set("unsaved", true);
+        boolean dropped = f.drop();
+        assertTrue(dropped);
+        assertEquals(f.get("saved", Integer.class), 1);
+        assertFalse(f.contains("unsaved"));
+
+        // a requested save counts as saved, even before it is written
+        f.set("saved", 3);
+        f.requestWrite(60_000);
+        f.set("saved", 4);
+        f.drop();
+        assertEquals(f.get("saved", Integer.class), 3);
+
+        // a requested write can be forced early, and leaves no temp file behind
+        boolean flushed = f.flush();
+        assertTrue(flushed);
+        assertFalse(new File(physicalFile.getPath() + ".tmp").exists());
+
+        OptionsFile g = new OptionsFile(BasicConverters.getInstance(), physicalFile);
+        assertEquals(g.get("saved", Integer.class), 3);
+
+    }
+
+}
@@ -0,0 +1,47 @@
+package external.webinterface;
+
+import fi.iki.elonen.NanoHTTPD;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class AssetStoreTest {
+
+    @Test
+    void servesIndexFromClasspath() throws IOException {
+
+        AssetStore assets = new AssetStore(AssetStoreTest.class.getClassLoader());
+        AssetStore.Asset index = assets.get("/");
+        assertEquals(index, assets.get("/index.html"));
+        assertEquals("text/html; charset=utf-8", index.getMimeType());
+        assertNull(assets.get("/missing.html"));
+        assertNull(assets.get("/external/webinterface/AssetStore.class")); // only the web folder is served
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("accept-encoding", "gzip, deflate");
+        NanoHTTPD.Response response = AssetStore.respond(index, headers);
+        assertEquals(NanoHTTPD.Response.Status.OK, response.getStatus());
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals(index.getGzippedETag(), response.getHeader("ETag"));
+        assertNotEquals(index.getETag(), index.getGzippedETag());
+
+        headers.put("if-none-match", index.getGzippedETag());
+        assertEquals(NanoHTTPD.Response.Status.NOT_MODIFIED, AssetStore.respond(index, headers).getStatus());
+
+        // the plain version is a different representation, so its ETag doesn't match a gzipped request
+        headers.put("if-none-match", index.getETag());
+        assertEquals(NanoHTTPD.Response.Status.OK, AssetStore.respond(index, headers).getStatus());
+        headers.remove("accept-encoding");
+        NanoHTTPD.Response plain = AssetStore.respond(index, headers);
+        assertEquals(NanoHTTPD.Response.Status.NOT_MODIFIED, plain.getStatus());
+        assertEquals(index.getETag(), plain.getHeader("ETag"));
+
+    }
+
+}
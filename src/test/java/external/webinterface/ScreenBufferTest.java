@@ -0,0 +1,61 @@
+package external.webinterface;
+
+import external.util.Utility;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ScreenBufferTest {
+
+    @Test
+    void onlySendsChangedLines() {
+
+        ScreenBuffer screen = new ScreenBuffer(3, 20);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes);
+
+        for (int i = 0; i < 3; i++) {
+            screen.line(i).append("line ").append(String.valueOf(i));
+        }
+        assertEquals(3, screen.flush(out));
+
+        // redrawing the same content sends nothing
+        for (int i = 0; i < 3; i++) {
+            screen.line(i).append("line ").append(String.valueOf(i));
+        }
+        assertEquals(0, screen.flush(out));
+
+        screen.line(1).append("changed");
+        bytes.reset();
+        assertEquals(1, screen.flush(out));
+        out.flush();
+        assertEquals("\u00011\u0002changed\n", bytes.toString());
+
+        screen.invalidate();
+        assertEquals(3, screen.flush(out));
+
+    }
+
+    @Test
+    void centersLikeUtility() {
+
+        ScreenBuffer screen = new ScreenBuffer(1, 40);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes);
+
+        for (String s : new String[]{"", "a", "ab", "odd", "even"}) {
+            for (int width : new int[]{9, 10}) {
+                bytes.reset();
+                screen.line(0).appendCentered("< ", s, " >", width);
+                screen.flush(out);
+                out.flush();
+                assertEquals("\u00010\u0002" + Utility.center("< " + s + " >", width) + "\n", bytes.toString());
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,111 @@
+package external.webinterface;
+
+import fi.iki.elonen.NanoHTTPD;
+import fi.iki.elonen.NanoWSD;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TelemetryTransportTest {
+
+    @Test
+    void batchesWritesIntoFrames() {
+
+        TelemetryTransport t = new TelemetryTransport(() -> null, TelemetryTransport.Framing.BINARY, 16, 8);
+
+        t.write(new byte[40], 0, 40); // fills two frames, leaves 8 bytes in the buffer
+        assertEquals(2, t.getPendingFrames());
+        t.flush();
+        assertEquals(3, t.getPendingFrames());
+        t.flush(); // nothing written, no empty frame
+        assertEquals(3, t.getPendingFrames());
+
+    }
+
+    @Test
+    void dropsOldestWithoutClient() {
+
+        TelemetryTransport t = new TelemetryTransport(() -> null, TelemetryTransport.Framing.TEXT, 4, 2);
+
+        for (int i = 0; i < 5; i++) {
+            t.write(new byte[]{'a', 'b', 'c', 'd'}, 0, 4);
+            t.flush();
+        }
+        t.drain(); // no client, nothing gets sent
+
+        assertEquals(2, t.getPendingFrames());
+        assertEquals(3, t.getFramesDropped());
+        assertEquals(12, t.getBytesDropped());
+        assertEquals(0, t.getFramesSent());
+
+    }
+
+    /**
+     * An open socket that only remembers the text it was sent
+     */
+    static class RecordingSocket extends NanoWSD.WebSocket {
+        final StringBuilder text = new StringBuilder();
+
+        RecordingSocket() {
+            super((NanoHTTPD.IHTTPSession) Proxy.newProxyInstance(
+                    RecordingSocket.class.getClassLoader(),
+                    new Class<?>[]{NanoHTTPD.IHTTPSession.class},
+                    (proxy, method, args) -> null));
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void send(String payload) {
+            text.append(payload);
+        }
+
+        @Override
+        protected void onOpen() {
+        }
+
+        @Override
+        protected void onClose(NanoWSD.WebSocketFrame.CloseCode code, String reason, boolean initiatedByRemote) {
+        }
+
+        @Override
+        protected void onMessage(NanoWSD.WebSocketFrame message) {
+        }
+
+        @Override
+        protected void onPong(NanoWSD.WebSocketFrame pong) {
+        }
+
+        @Override
+        protected void onException(java.io.IOException exception) {
+        }
+    }
+
+    @Test
+    void textFramesDecodeWholeCharacters() {
+
+        RecordingSocket socket = new RecordingSocket();
+        List<NanoWSD.WebSocket> clients = Collections.singletonList(socket);
+        TelemetryTransport t = new TelemetryTransport(() -> clients, TelemetryTransport.Framing.TEXT,
+                StandardCharsets.UTF_8, 3, 16);
+
+        String text = "\u00e9\u2713 7393 \u2192 \u00fc";
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        t.write(bytes, 0, bytes.length); // 3 byte frames split most of these characters
+        t.flush();
+        t.drain();
+
+        assertEquals(text, socket.text.toString());
+        assertEquals(0, t.getFramesDropped());
+
+    }
+
+}
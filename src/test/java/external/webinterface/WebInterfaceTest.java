@@ -0,0 +1,326 @@
+package external.webinterface;
+
+import examples.GameChangersOptionOp;
+import external.headless.HeadlessRunner;
+import external.headless.SessionRecorder;
+import external.headless.SessionRecording;
+import external.opmode.HardwarelessAbstractOp;
+import external.util.BasicConverters;
+import external.util.Logger;
+import external.util.OptionsFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WebInterfaceTest {
+
+    /**
+     * Prints whenever it has to redraw, and whenever A is pressed
+     */
+    static class EchoOp extends HardwarelessAbstractOp {
+        private boolean wasPressed;
+        volatile boolean started, ended;
+
+        @Override
+        protected Logger createLogger() {
+            return null;
+        }
+
+        @Override
+        protected void setup() {
+        }
+
+        @Override
+        protected void setup_act() {
+        }
+
+        @Override
+        protected void go() {
+            started = true;
+        }
+
+        @Override
+        protected void pre_act() {
+        }
+
+        @Override
+        protected void act() {
+            boolean pressed = gamepad1.isPressed(VirtualGamepad.Button.A);
+            if (pressed && !wasPressed) out.println("pressed A");
+            wasPressed = pressed;
+        }
+
+        @Override
+        protected void post_act() {
+        }
+
+        @Override
+        protected void end() {
+            ended = true;
+        }
+
+        @Override
+        public void refresh() {
+            out.println("refresh");
+        }
+    }
+
+    /**
+     * Collects everything the server sends, without the sequence numbers
+     */
+    static class Client implements WebSocket.Listener {
+        final StringBuffer received = new StringBuffer();
+        WebSocket socket;
+
+        @Override
+        public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            received.append(new String(bytes, TelemetryTransport.HEADER_SIZE,
+                    bytes.length - TelemetryTransport.HEADER_SIZE, StandardCharsets.UTF_8));
+            webSocket.request(1);
+            return null;
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) throw new AssertionError("timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void sessionsAreIndependent() throws Exception {
+
+        int socketPort = freePort();
+        int port = freePort();
+        WebInterface web = new WebInterface(port, socketPort, 10_000_000L, 2, session -> new EchoOp());
+        HttpClient http = HttpClient.newHttpClient();
+
+        try {
+            Client a1 = connect(http, socketPort, "?session=a");
+            Client a2 = connect(http, socketPort, "?session=a");
+            Client b = connect(http, socketPort, "");
+
+            await(() -> web.getSession("a") != null && web.getSession("a").getClientCount() == 2);
+            await(() -> web.getSession(Session.DEFAULT_ID) != null);
+            assertEquals(2, web.getSessions().size());
+
+            // a key from one client goes to its own session, and the output goes to every client of that session
+            a1.socket.sendText("DOWNw", true).join();
+            await(() -> a1.received.indexOf("pressed A") >= 0 && a2.received.indexOf("pressed A") >= 0);
+            assertEquals(1, web.getSession("a").getMessages());
+            assertEquals(0, web.getSession(Session.DEFAULT_ID).getMessages());
+            assertEquals(-1, b.received.indexOf("pressed A"));
+            await(() -> b.received.indexOf("refresh") >= 0);
+
+            // a client that lost frames asks for the whole screen again
+            b.socket.sendText("RFSH", true).join();
+            await(() -> b.received.indexOf("refresh") != b.received.lastIndexOf("refresh"));
+
+            String json = http.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/sessions")).build(),
+                    HttpResponse.BodyHandlers.ofString()).body();
+            assert (json.contains("\"id\":\"a\""));
+
+            // the session ends with its last client, and the next client gets a new one
+            Session first = web.getSession("a");
+            a1.socket.sendClose(WebSocket.NORMAL_CLOSURE, "").join();
+            a2.socket.sendClose(WebSocket.NORMAL_CLOSURE, "").join();
+            first.awaitEnd();
+            assertEquals(Session.State.STOPPED, first.getState());
+            await(() -> web.getSession("a") == null);
+
+            Client again = connect(http, socketPort, "?session=a");
+            await(() -> web.getSession("a") != null);
+            assert (web.getSession("a") != first);
+            again.socket.sendClose(WebSocket.NORMAL_CLOSURE, "").join();
+            b.socket.sendClose(WebSocket.NORMAL_CLOSURE, "").join();
+        } finally {
+            web.stop();
+        }
+
+    }
+
+    @Test
+    void sessionAbandonedBeforeStartEnds() throws Exception {
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        EchoOp op = new EchoOp();
+        Session session = new Session("early", 10_000_000L, s -> op);
+        try {
+            // the only client leaves before the opmode is even initialized
+            TelemetryTransportTest.RecordingSocket client = new TelemetryTransportTest.RecordingSocket();
+            assert (session.join(client));
+            session.leave(client);
+
+            session.start(executor, executor, s -> {
+            });
+            boolean ended = session.awaitEnd(5, TimeUnit.SECONDS);
+            assertTrue(ended);
+            assertEquals(Session.State.STOPPED, session.getState());
+            assertFalse(op.started);
+            assertTrue(op.ended);
+        } finally {
+            executor.shutdownNow();
+        }
+
+    }
+
+    @Test
+    void sessionEndsWhenTheOpModeThrowsAnError() throws Exception {
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        EchoOp op = new EchoOp() {
+            @Override
+            protected void act() {
+                throw new AssertionError("the opmode broke");
+            }
+        };
+        Session session = new Session("broken", 10_000_000L, s -> op);
+        try {
+            assert (session.join(new TelemetryTransportTest.RecordingSocket()));
+            session.start(executor, executor, s -> {
+            });
+
+            boolean ended = session.awaitEnd(5, TimeUnit.SECONDS);
+            assertTrue(ended);
+            assertEquals(Session.State.STOPPED, session.getState());
+            assertTrue(op.ended);
+            assertFalse(session.join(new TelemetryTransportTest.RecordingSocket()));
+        } finally {
+            executor.shutdownNow();
+        }
+
+    }
+
+    @Test
+    void recordedSessionReplays() throws Exception {
+
+        File dir = new File("build/tmp/web-interface-test");
+        dir.mkdirs();
+        String livePath = new File(dir, "options-live").getPath();
+        new File(livePath + "-gamechangers").delete();
+
+        // set up the way Main records the default session
+        SessionRecorder[] recorder = new SessionRecorder[1];
+        int socketPort = freePort();
+        int port = freePort();
+        WebInterface web = new WebInterface(port, socketPort, 10_000_000L, 2, session -> {
+            GameChangersOptionOp op = new GameChangersOptionOp(livePath);
+            recorder[0] = new SessionRecorder(session.getGamepad(), session.getOut(), session.getLoopPeriodNanos(),
+                    op.getOptionValues());
+            op.out = recorder[0].getOut();
+            session.setRefreshListener(recorder[0]::refreshed);
+            return op;
+        });
+        HttpClient http = HttpClient.newHttpClient();
+
+        try {
+            Client client = connect(http, socketPort, "?session=rec");
+            await(() -> web.getSession("rec") != null && web.getSession("rec").getState() == Session.State.RUNNING);
+            Session session = web.getSession("rec");
+
+            // change an option, scroll down, ask for the whole screen again, and change another option
+            String[] messages = {"DOWN/", "KYUP/", "DOWNArrowDown", "KYUPArrowDown", "RFSH", "DOWN/", "KYUP/"};
+            for (String message : messages) {
+                client.socket.sendText(message, true).join();
+            }
+            await(() -> session.getMessages() == messages.length);
+            long loops = session.getLoops();
+            await(() -> session.getLoops() > loops + 10);
+
+            client.socket.sendClose(WebSocket.NORMAL_CLOSURE, "").join();
+            session.awaitEnd();
+        } finally {
+            web.stop();
+        }
+
+        SessionRecording recording = recorder[0].finish();
+        int refreshes = 0;
+        for (int i = 0; i < recording.getEventCount(); i++) {
+            if (recording.isRefresh(i)) refreshes++;
+        }
+        assertTrue(refreshes >= 1, "no refresh was recorded");
+
+        String replayPath = new File(dir, "options-replay").getPath();
+        HeadlessRunner runner = new HeadlessRunner(r -> {
+            try {
+                new OptionsFile(BasicConverters.getInstance(), r.getOptions(), new File(replayPath + "-gamechangers"));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return new GameChangersOptionOp(replayPath);
+        });
+        HeadlessRunner.Result result = runner.replay(recording);
+        assert (result.matches()) : result;
+
+    }
+
+    @Test
+    void stopEndsEverySession() throws Exception {
+
+        int socketPort = freePort();
+        int port = freePort();
+        WebInterface web = new WebInterface(port, socketPort, 10_000_000L, 2, session -> new EchoOp());
+        HttpClient http = HttpClient.newHttpClient();
+
+        connect(http, socketPort, "?session=a");
+        connect(http, socketPort, "?session=b");
+        await(() -> web.getSessions().size() == 2
+                && web.getSessions().stream().allMatch(s -> s.getState() == Session.State.RUNNING));
+        Session a = web.getSession("a");
+        Session b = web.getSession("b");
+
+        web.stop();
+        assertEquals(Session.State.STOPPED, a.getState());
+        assertEquals(Session.State.STOPPED, b.getState());
+        assertTrue(((EchoOp) a.getOpMode()).ended);
+        assertTrue(((EchoOp) b.getOpMode()).ended);
+
+    }
+
+    @Test
+    void rejectsInvalidSessionIds() {
+
+        assert (Session.isValidId("team-7393_a"));
+        assert (!Session.isValidId("../options"));
+        assert (!Session.isValidId(""));
+        assert (!Session.isValidId(null));
+
+    }
+
+    private static Client connect(HttpClient http, int socketPort, String query) {
+        Client client = new Client();
+        client.socket = http.newWebSocketBuilder()
+                .buildAsync(URI.create("ws://localhost:" + socketPort + "/" + query), client)
+                .join();
+        return client;
+    }
+}